@@ -0,0 +1,75 @@
+package de.comsystoreply.redislocks;
+
+import org.influxdb.dto.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of one lock event as the drainer writes it, run with -prof gc to compare gc.alloc.rate.norm.
+ * pointBuilder is the former influxdb-java encoding, which sent the lines uncompressed with nanosecond timestamps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineProtocolWriterBenchmark {
+    private static final String LOCK_NAME = "sweetroll";
+    private static final String APP_NAME = "node1";
+    private static final String LOCK_ID = "sweetroll_node1_b31b2b23f3e2df61-1_1792310831721";
+    private static final long TIMESTAMP = 1792310831721L;
+
+    private LineProtocolWriter lineWriter;
+
+    @Setup
+    public void setUp() {
+        lineWriter = new LineProtocolWriter(new LineProtocolWriter.Transport() {
+            @Override
+            public void send(byte[] lines, int length) {
+            }
+
+            @Override
+            public TimeUnit precision() {
+                return TimeUnit.MILLISECONDS;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 1000);
+    }
+
+    @Benchmark
+    public void lineWriter() {
+        lineWriter.measurement(LOCK_NAME)
+                .tag("appName", APP_NAME)
+                .tag("eventType", LockEventType.LOCK_SUCCESS.getEventType())
+                .field("lockId", LOCK_ID)
+                .end(TIMESTAMP);
+        lineWriter.flush();
+    }
+
+    @Benchmark
+    public byte[] pointBuilder() {
+        return Point.measurement(LOCK_NAME)
+                .time(TIMESTAMP, TimeUnit.MILLISECONDS)
+                .tag("appName", APP_NAME)
+                .tag("eventType", LockEventType.LOCK_SUCCESS.getEventType())
+                .addField("lockId", LOCK_ID)
+                .build()
+                .lineProtocol()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
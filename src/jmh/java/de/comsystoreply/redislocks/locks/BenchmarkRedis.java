@@ -0,0 +1,86 @@
+package de.comsystoreply.redislocks.locks;
+
+import de.comsystoreply.redislocks.LineProtocolWriter;
+import de.comsystoreply.redislocks.MetricsReporter;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Redis side of the benchmarks, by default a local Redis on localhost:6379,
+ * e.g. started with docker-compose-redis-standalone.yml. Override with -Dredis.host and -Dredis.port.
+ */
+final class BenchmarkRedis implements AutoCloseable {
+    static final long LOCK_EXPIRY_MILLIS = 5000;
+    static final String APP_NAME = "benchmark";
+
+    final StringRedisTemplate template;
+    final MetricsReporter metricsReporter;
+    final LockReleaseSubscriber releaseSubscriber;
+    private final JedisConnectionFactory connectionFactory;
+    private final RedisMessageListenerContainer container;
+
+    BenchmarkRedis(int poolSize) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(poolSize);
+        poolConfig.setMaxIdle(poolSize);
+        connectionFactory = new JedisConnectionFactory(
+                new RedisStandaloneConfiguration(
+                        System.getProperty("redis.host", "localhost"),
+                        Integer.getInteger("redis.port", 6379)),
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+        LockScripts.load(template);
+
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+        releaseSubscriber = new LockReleaseSubscriber(container);
+
+        //events go through the buffer and the drainer as in production, only the lines are not sent
+        metricsReporter = new MetricsReporter(noopLineWriter(), 8192, MetricsReporter.OverflowPolicy.DROP_OLDEST, 200, 1000, 10000, 100, 0, 1);
+    }
+
+    /**
+     * @param localGate the gate of the node the lock belongs to, locks sharing it are contended for within the JVM first
+     */
+    RedisLock redisLock(String lockName, LocalLockGate localGate) {
+        return redisLock(lockName, LockListener.compose(new MetricsLockListener(metricsReporter, APP_NAME), new LoggingLockListener()), localGate);
+    }
+
+    RedisLock redisLock(String lockName, LockListener listener, LocalLockGate localGate) {
+        return new RedisLock(template, listener, releaseSubscriber, null, localGate, null,
+                System::currentTimeMillis, System::nanoTime, LOCK_EXPIRY_MILLIS, lockName, APP_NAME);
+    }
+
+    @Override
+    public void close() throws Exception {
+        metricsReporter.close();
+        container.destroy();
+        connectionFactory.destroy();
+    }
+
+    static LineProtocolWriter noopLineWriter() {
+        return new LineProtocolWriter(new LineProtocolWriter.Transport() {
+            @Override
+            public void send(byte[] lines, int length) {
+            }
+
+            @Override
+            public TimeUnit precision() {
+                return TimeUnit.MILLISECONDS;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 1000);
+    }
+}
@@ -0,0 +1,64 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Token, value and clock reads of one lock attempt without Redis, run with -prof gc to compare gc.alloc.rate.norm.
+ * The value is read as often as RedisLock does on a successful attempt, uuidAttemptId is the former implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LockAttemptIdBenchmark {
+    private static final int VALUE_READS = 5;
+    private static final String LOCK_NAME = "sweetroll";
+
+    private final LongSupplier timeSupplier = System::currentTimeMillis;
+    private final LongSupplier nanoTimeSupplier = System::nanoTime;
+    private final Supplier<Long> boxedTimeSupplier = System::currentTimeMillis;
+
+    @Benchmark
+    public void attemptId(Blackhole blackhole) {
+        LockAttemptId lockAttemptId = new LockAttemptId(BenchmarkRedis.APP_NAME, LOCK_NAME, timeSupplier.getAsLong());
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        for (int i = 0; i < VALUE_READS; i++) {
+            blackhole.consume(lockAttemptId.getValue());
+        }
+        blackhole.consume(nanoTimeSupplier.getAsLong() - acquiredNanos);
+    }
+
+    @Benchmark
+    public void uuidAttemptId(Blackhole blackhole) {
+        String id = UUID.randomUUID().toString();
+        long timestamp = boxedTimeSupplier.get();
+        for (int i = 0; i < VALUE_READS; i++) {
+            blackhole.consume(new StringJoiner("_")
+                    .add(LOCK_NAME)
+                    .add(BenchmarkRedis.APP_NAME)
+                    .add(id)
+                    .add(String.valueOf(timestamp))
+                    .toString());
+        }
+        blackhole.consume(boxedTimeSupplier.get() - timestamp);
+    }
+}
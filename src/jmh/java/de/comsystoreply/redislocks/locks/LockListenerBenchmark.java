@@ -0,0 +1,94 @@
+package de.comsystoreply.redislocks.locks;
+
+import ch.qos.logback.classic.Level;
+import de.comsystoreply.redislocks.MetricsReporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The listener calls of one successful lock attempt without Redis, i.e. what every instrumentation layer adds to
+ * {@link RedisLock}. NONE is the baseline, logging is measured at the level of {@code loggingLevel} (WARN: disabled).
+ * Runs with 4 threads, so the metrics layer is measured with its queue shared like in the application; on fewer cores
+ * than threads the times include the time slicing and only gc.alloc.rate.norm of -prof gc compares well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LockListenerBenchmark {
+    private static final String LOCK_NAME = "sweetroll";
+
+    public enum Layers {
+        NONE,
+        LOGGING,
+        METRICS,
+        TRACING,
+        ALL
+    }
+
+    @Param
+    public Layers layers;
+
+    @Param("WARN")
+    public String loggingLevel;
+
+    private MetricsReporter metricsReporter;
+    private LockListener listener;
+
+    @Setup
+    public void setUp() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(LoggingLockListener.class)).setLevel(Level.toLevel(loggingLevel));
+        metricsReporter = new MetricsReporter(BenchmarkRedis.noopLineWriter(), 8192, MetricsReporter.OverflowPolicy.DROP_OLDEST, 200, 1000, 10000, 100, 0, 1);
+        MetricsLockListener metrics = new MetricsLockListener(metricsReporter, BenchmarkRedis.APP_NAME);
+        switch (layers) {
+            case LOGGING:
+                listener = LockListener.compose(new LoggingLockListener());
+                break;
+            case METRICS:
+                listener = LockListener.compose(metrics);
+                break;
+            case TRACING:
+                listener = LockListener.compose(new TracingLockListener());
+                break;
+            case ALL:
+                listener = LockListener.compose(metrics, new LoggingLockListener(), new TracingLockListener());
+                break;
+            default:
+                listener = LockListener.compose();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        metricsReporter.close();
+    }
+
+    @Benchmark
+    public LockAttemptId successfulAttempt() {
+        LockAttemptId lockAttemptId = new LockAttemptId(BenchmarkRedis.APP_NAME, LOCK_NAME, System.currentTimeMillis());
+        long attemptNanos = System.nanoTime();
+        listener.onAttempt(LOCK_NAME, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        long acquiredNanos = System.nanoTime();
+        listener.onAcquired(LOCK_NAME, lockAttemptId.getValue(), lockAttemptId.timestamp, acquiredNanos - attemptNanos);
+        long releaseNanos = System.nanoTime();
+        listener.onReleased(LOCK_NAME, lockAttemptId.getValue(), releaseNanos - acquiredNanos, System.nanoTime() - releaseNanos);
+        return lockAttemptId;
+    }
+}
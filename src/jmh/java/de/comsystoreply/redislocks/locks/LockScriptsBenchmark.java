@@ -0,0 +1,82 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single lock release by the way the delete script is sent:
+ * <ul>
+ * <li>cachedScript - the preloaded LockScripts.DELETE, EVALSHA with the 40 byte digest</li>
+ * <li>scriptPerRelease - a new script object per release as before, its SHA1 digest is computed on every release</li>
+ * <li>scriptBody - plain EVAL, the whole script body (188 bytes) is sent on every release</li>
+ * </ul>
+ * The released lock is not held, so the script finds no value and only the way of sending it differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LockScriptsBenchmark {
+    private static final String KEY = "benchmark:script";
+    private static final String VALUE = "benchmark:script:value";
+
+    private BenchmarkRedis redis;
+    private List<String> keys;
+    private String releaseChannel;
+    private byte[] scriptBody;
+    private byte[][] keysAndArgs;
+
+    @Setup
+    public void setUp() {
+        redis = new BenchmarkRedis(8);
+        keys = Collections.singletonList(KEY);
+        releaseChannel = LockReleaseSubscriber.releaseChannel(KEY);
+        scriptBody = LockScripts.DELETE.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        keysAndArgs = new byte[][]{bytes(KEY), bytes(VALUE), bytes(releaseChannel)};
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Benchmark
+    public String cachedScript() {
+        return redis.template.execute(LockScripts.DELETE, keys, VALUE, releaseChannel);
+    }
+
+    @Benchmark
+    public String scriptPerRelease() {
+        DefaultRedisScript<String> script = new DefaultRedisScript<>(LockScripts.DELETE.getScriptAsString(), String.class);
+        return redis.template.execute(script, keys, VALUE, releaseChannel);
+    }
+
+    @Benchmark
+    public Object scriptBody() {
+        return redis.template.execute((RedisCallback<Object>) connection ->
+                connection.scriptingCommands().eval(scriptBody, ReturnType.VALUE, 1, keysAndArgs));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquire and release of an empty critical section for every lock variant:
+ * <ul>
+ * <li>UNCONTENDED - every thread has a lock of its own</li>
+ * <li>CONTENDED - all threads fight for one lock, most attempts find it busy</li>
+ * <li>MANY_KEYS - every attempt picks one of {@code keys} locks at random</li>
+ * </ul>
+ * Every thread acts as a node of its own with its own {@link LocalLockGate}, so contenders meet in Redis as they do across
+ * nodes. SHARED_GATE puts all threads on one node instead: contenders of a lock then wait in the gate without asking Redis.
+ * The amount of threads is set with -t, the acquired and busy counters show how many attempts got the lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class LockVariantsBenchmark {
+    private static final Runnable CRITICAL_SECTION = () -> {
+    };
+
+    public enum Scenario {
+        UNCONTENDED,
+        CONTENDED,
+        MANY_KEYS
+    }
+
+    public enum Variant {
+        REDIS_LOCK {
+            @Override
+            DistributedLock create(BenchmarkRedis redis, String lockName, LocalLockGate localGate) {
+                return redis.redisLock(lockName, localGate);
+            }
+        },
+        SHARED_GATE {
+            @Override
+            LocalLockGate localGate(LockVariantsBenchmark benchmark) {
+                return benchmark.sharedGate;
+            }
+
+            @Override
+            DistributedLock create(BenchmarkRedis redis, String lockName, LocalLockGate localGate) {
+                return redis.redisLock(lockName, localGate);
+            }
+        },
+        WITH_DELETE_CHECK {
+            @Override
+            DistributedLock create(BenchmarkRedis redis, String lockName, LocalLockGate localGate) {
+                return redis.redisLock(lockName, LockListener.NONE, localGate);
+            }
+        },
+        WITH_DELETE_CHECK_AND_LOGGING {
+            @Override
+            DistributedLock create(BenchmarkRedis redis, String lockName, LocalLockGate localGate) {
+                return redis.redisLock(lockName, new LoggingLockListener(), localGate);
+            }
+        },
+        BROKEN {
+            @Override
+            DistributedLock create(BenchmarkRedis redis, String lockName, LocalLockGate localGate) {
+                return new RedisLockBroken(redis.template, System::currentTimeMillis,
+                        BenchmarkRedis.LOCK_EXPIRY_MILLIS, lockName, BenchmarkRedis.APP_NAME);
+            }
+        };
+
+        /**
+         * @return the gate of the node a thread runs on, by default a node per thread
+         */
+        LocalLockGate localGate(LockVariantsBenchmark benchmark) {
+            return new LocalLockGate();
+        }
+
+        abstract DistributedLock create(BenchmarkRedis redis, String lockName, LocalLockGate localGate);
+    }
+
+    @Param
+    public Variant variant;
+
+    @Param
+    public Scenario scenario;
+
+    @Param("1024")
+    public int keys;
+
+    private BenchmarkRedis redis;
+    private LocalLockGate sharedGate;
+
+    @Setup
+    public void setUp() {
+        redis = new BenchmarkRedis(64);
+        sharedGate = new LocalLockGate();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    /**
+     * The locks of one thread, created on the gate of its node.
+     */
+    @State(Scope.Thread)
+    public static class Contender {
+        private DistributedLock ownLock;
+        private DistributedLock contendedLock;
+        private DistributedLock[] manyKeysLocks;
+
+        @Setup
+        public void setUp(LockVariantsBenchmark benchmark, ThreadParams threadParams) {
+            Variant variant = benchmark.variant;
+            LocalLockGate localGate = variant.localGate(benchmark);
+            ownLock = variant.create(benchmark.redis, "benchmark:uncontended:" + threadParams.getThreadIndex(), localGate);
+            contendedLock = variant.create(benchmark.redis, "benchmark:contended", localGate);
+            manyKeysLocks = new DistributedLock[benchmark.keys];
+            for (int i = 0; i < benchmark.keys; i++) {
+                manyKeysLocks[i] = variant.create(benchmark.redis, "benchmark:key:" + i, localGate);
+            }
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Outcomes {
+        public long acquired;
+        public long busy;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            acquired = 0;
+            busy = 0;
+        }
+    }
+
+    @Benchmark
+    public boolean acquireRelease(Contender contender, Outcomes outcomes) {
+        boolean acquired = lockFor(contender).withLock(CRITICAL_SECTION);
+        if (acquired) {
+            outcomes.acquired++;
+        } else {
+            outcomes.busy++;
+        }
+        return acquired;
+    }
+
+    private DistributedLock lockFor(Contender contender) {
+        switch (scenario) {
+            case CONTENDED:
+                return contender.contendedLock;
+            case MANY_KEYS:
+                return contender.manyKeysLocks[ThreadLocalRandom.current().nextInt(keys)];
+            default:
+                return contender.ownLock;
+        }
+    }
+}
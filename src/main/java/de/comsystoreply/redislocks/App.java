@@ -1,18 +1,25 @@
 package de.comsystoreply.redislocks;
 
+import de.comsystoreply.redislocks.locks.LockRetryPolicy;
 import de.comsystoreply.redislocks.locks.RedisLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+
 public class App {
     private static final Logger LOG = LoggerFactory.getLogger(App.class);
 
     private final String appName;
     private final RedisLock lock;
+    private final Duration lockMaxWait;
+    private final LockRetryPolicy lockRetryPolicy;
 
-    public App(RedisLock lock, String appName) {
+    public App(RedisLock lock, String appName, Duration lockMaxWait, LockRetryPolicy lockRetryPolicy) {
         this.appName = appName;
         this.lock = lock;
+        this.lockMaxWait = lockMaxWait;
+        this.lockRetryPolicy = lockRetryPolicy;
     }
 
     public void fightForSweetroll(long cycles) {
@@ -31,7 +38,7 @@ public class App {
                 }
 
                 LOG.info("{} ate a sweetroll", appName);
-            });
+            }, lockMaxWait, lockRetryPolicy);
 
             if (lockObtained) {
                 LOG.info("{} is full and relaxes", appName);
@@ -0,0 +1,131 @@
+package de.comsystoreply.redislocks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Posts batches to the /write endpoint of InfluxDB with millisecond timestamps, gzip compressed if enabled.
+ * Connections are kept alive by the JDK between the batches.
+ */
+public final class HttpLineTransport implements LineProtocolWriter.Transport {
+    private final URL writeUrl;
+    private final URL pingUrl;
+    private final String authorization;
+    private final boolean gzip;
+    private final int timeoutMillis;
+    private final Buffer compressed = new Buffer();
+
+    public HttpLineTransport(String url, String database, String user, String password, boolean gzip, int timeoutMillis)
+            throws IOException {
+        String baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.writeUrl = new URL(baseUrl + "/write?precision=ms&db=" + URLEncoder.encode(database, "UTF-8"));
+        this.pingUrl = new URL(baseUrl + "/ping");
+        this.authorization = user == null || user.isEmpty()
+                ? null
+                : "Basic " + Base64.getEncoder().encodeToString((user + ':' + password).getBytes(StandardCharsets.UTF_8));
+        this.gzip = gzip;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the version of InfluxDB
+     */
+    public String ping() throws IOException {
+        HttpURLConnection connection = open(pingUrl);
+        int status = connection.getResponseCode();
+        discard(connection, status);
+        if (status / 100 != 2) {
+            throw new IOException("InfluxDB ping failed with status " + status);
+        }
+        return connection.getHeaderField("X-Influxdb-Version");
+    }
+
+    @Override
+    public void send(byte[] lines, int length) throws IOException {
+        byte[] body = lines;
+        int bodyLength = length;
+        if (gzip) {
+            compressed.reset();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+                out.write(lines, 0, length);
+            }
+            body = compressed.bytes();
+            bodyLength = compressed.size();
+        }
+        HttpURLConnection connection = open(writeUrl);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(bodyLength);
+        connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+        if (gzip) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body, 0, bodyLength);
+        }
+        int status = connection.getResponseCode();
+        String error = discard(connection, status);
+        if (status / 100 != 2) {
+            throw new IOException("InfluxDB write failed with status " + status + ": " + error);
+        }
+    }
+
+    @Override
+    public TimeUnit precision() {
+        return TimeUnit.MILLISECONDS;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    /**
+     * Reads the response to the end, otherwise the connection is not reused.
+     *
+     * @return the error body of a failed request
+     */
+    private static String discard(HttpURLConnection connection, int status) throws IOException {
+        InputStream in = status / 100 == 2 ? connection.getInputStream() : connection.getErrorStream();
+        if (in == null) {
+            return "";
+        }
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream body = in) {
+            byte[] chunk = new byte[512];
+            int read;
+            while ((read = body.read(chunk)) != -1) {
+                response.write(chunk, 0, read);
+            }
+        }
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private Buffer() {
+            super(8 * 1024);
+        }
+
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+}
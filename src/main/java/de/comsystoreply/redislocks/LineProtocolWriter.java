@@ -0,0 +1,297 @@
+package de.comsystoreply.redislocks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes points in the InfluxDB line protocol straight into one reused byte array and hands it to the transport
+ * once batchSize points are buffered or on {@link #flush()}. No point objects, maps or strings are created per point.
+ * <p>
+ * A point is written with {@link #measurement(String)}, its tags, at least one field and {@link #end(long)}.
+ * Not thread-safe, the {@link MetricsReporter} writes from its drainer thread only.
+ */
+public final class LineProtocolWriter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LineProtocolWriter.class);
+
+    private static final byte[] NANOS_OF_MILLI = {'0', '0', '0', '0', '0', '0'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    public interface Transport extends Closeable {
+
+        /**
+         * Sends complete lines, the bytes are reused once the method returns.
+         */
+        void send(byte[] lines, int length) throws IOException;
+
+        /**
+         * @return the precision the timestamps are written in, MILLISECONDS or NANOSECONDS
+         */
+        TimeUnit precision();
+    }
+
+    private final Transport transport;
+    private final int batchSize;
+    private final boolean nanosPrecision;
+    private byte[] buffer = new byte[16 * 1024];
+    private int length;
+    //end of the last completed line, anything behind it belongs to a point that is still written or was abandoned
+    private int completedLength;
+    private int points;
+    private boolean hasFields;
+    private long sentPoints;
+    private long sentBytes;
+    private long droppedPoints;
+
+    public LineProtocolWriter(Transport transport, int batchSize) {
+        this.transport = transport;
+        this.batchSize = batchSize;
+        this.nanosPrecision = transport.precision() == TimeUnit.NANOSECONDS;
+    }
+
+    public LineProtocolWriter measurement(String measurement) {
+        //drops what is left of a point whose writing failed
+        length = completedLength;
+        hasFields = false;
+        writeEscaped(measurement, false);
+        return this;
+    }
+
+    public LineProtocolWriter tag(String key, String value) {
+        ensureCapacity(1);
+        buffer[length++] = ',';
+        writeEscaped(key, true);
+        ensureCapacity(1);
+        buffer[length++] = '=';
+        writeEscaped(value, true);
+        return this;
+    }
+
+    public LineProtocolWriter field(String key, long value) {
+        fieldKey(key);
+        writeLong(value);
+        ensureCapacity(1);
+        buffer[length++] = 'i';
+        return this;
+    }
+
+    /**
+     * NaN and infinite values are left out, InfluxDB would reject the whole batch for them.
+     */
+    public LineProtocolWriter field(String key, double value) {
+        if (!Double.isFinite(value)) {
+            return this;
+        }
+        fieldKey(key);
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public LineProtocolWriter field(String key, boolean value) {
+        fieldKey(key);
+        ensureCapacity(1);
+        buffer[length++] = (byte) (value ? 't' : 'f');
+        return this;
+    }
+
+    public LineProtocolWriter field(String key, String value) {
+        fieldKey(key);
+        ensureCapacity(1);
+        buffer[length++] = '"';
+        writeStringValue(value);
+        ensureCapacity(1);
+        buffer[length++] = '"';
+        return this;
+    }
+
+    /**
+     * Completes the point, which is sent with the batch it completes.
+     *
+     * @param timestampMillis the time of the point
+     */
+    public void end(long timestampMillis) {
+        if (!hasFields) {
+            //InfluxDB rejects the whole batch for a line without fields
+            length = completedLength;
+            return;
+        }
+        ensureCapacity(28);
+        buffer[length++] = ' ';
+        writeLong(timestampMillis);
+        if (nanosPrecision) {
+            System.arraycopy(NANOS_OF_MILLI, 0, buffer, length, NANOS_OF_MILLI.length);
+            length += NANOS_OF_MILLI.length;
+        }
+        buffer[length++] = '\n';
+        completedLength = length;
+        if (++points >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the buffered points. A failed batch is dropped and logged, metrics are not worth retrying.
+     */
+    public void flush() {
+        if (points == 0) {
+            return;
+        }
+        try {
+            transport.send(buffer, completedLength);
+            sentPoints += points;
+            sentBytes += completedLength;
+        } catch (IOException | RuntimeException e) {
+            droppedPoints += points;
+            LOG.warn("Writing {} points to InfluxDB failed, the batch is dropped", points, e);
+        } finally {
+            length = 0;
+            completedLength = 0;
+            points = 0;
+        }
+    }
+
+    public long sentPoints() {
+        return sentPoints;
+    }
+
+    /**
+     * @return the line protocol bytes of the sent points, before any compression of the transport
+     */
+    public long sentBytes() {
+        return sentBytes;
+    }
+
+    public long droppedPoints() {
+        return droppedPoints;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        transport.close();
+    }
+
+    private void fieldKey(String key) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) (hasFields ? ',' : ' ');
+        hasFields = true;
+        writeEscaped(key, true);
+        ensureCapacity(1);
+        buffer[length++] = '=';
+    }
+
+    /**
+     * Measurements escape commas and spaces, tag keys, tag values and field keys also equal signs.
+     * Line breaks cannot be escaped, they are written as a backslash and n or r instead of ending the line.
+     */
+    private void writeEscaped(String value, boolean escapeEquals) {
+        int chars = value.length();
+        //at most 3 bytes per char: escaped chars take 2, UTF-8 up to 3 or 4 for a surrogate pair of 2 chars
+        ensureCapacity(chars * 3);
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == ' ' || (escapeEquals && c == '=')) {
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) c;
+            } else if (c == '\n' || c == '\r') {
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) (c == '\n' ? 'n' : 'r');
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else {
+                i = writeUtf8(value, i);
+            }
+        }
+    }
+
+    private void writeStringValue(String value) {
+        int chars = value.length();
+        ensureCapacity(chars * 3);
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) c;
+            } else if (c == '\n' || c == '\r') {
+                //an escaped backslash followed by n or r, a raw line break would split the point
+                buffer[length++] = '\\';
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) (c == '\n' ? 'n' : 'r');
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else {
+                i = writeUtf8(value, i);
+            }
+        }
+    }
+
+    /**
+     * @return the index of the last char written, the low surrogate for a surrogate pair
+     */
+    private int writeUtf8(String value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x800) {
+            buffer[length++] = (byte) (0xC0 | c >> 6);
+            buffer[length++] = (byte) (0x80 | c & 0x3F);
+            return index;
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+            return index + 1;
+        }
+        if (Character.isSurrogate(c)) {
+            buffer[length++] = '?';
+            return index;
+        }
+        buffer[length++] = (byte) (0xE0 | c >> 12);
+        buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+        buffer[length++] = (byte) (0x80 | c & 0x3F);
+        return index;
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(20);
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(MIN_LONG, 0, buffer, length, MIN_LONG.length);
+            length += MIN_LONG.length;
+            return;
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int position = length + digits;
+        do {
+            buffer[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        length += digits;
+    }
+
+    private void writeAscii(String value) {
+        int chars = value.length();
+        ensureCapacity(chars);
+        for (int i = 0; i < chars; i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (length + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package de.comsystoreply.redislocks;
+
+import de.comsystoreply.redislocks.locks.LockRetryPolicy;
+import de.comsystoreply.redislocks.locks.RedisLockRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets many contenders fight for a set of locks to reproduce a given contention level, e.g. for capacity planning.
+ * <p>
+ * In the CLOSED model a fixed amount of contenders each loop over attempt and think time, in the OPEN model
+ * attempts arrive as a Poisson process at a fixed rate regardless of how fast earlier attempts finish.
+ * Latencies are measured from the intended start of an attempt, so a backlog of arrivals shows up in the numbers.
+ */
+public class LoadGenerator {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    public enum ArrivalModel {
+        OPEN,
+        CLOSED
+    }
+
+    public enum HoldTimeDistribution {
+        FIXED {
+            @Override
+            long nextMillis(long meanMillis) {
+                return meanMillis;
+            }
+        },
+        UNIFORM {
+            @Override
+            long nextMillis(long meanMillis) {
+                return ThreadLocalRandom.current().nextLong(2 * meanMillis + 1);
+            }
+        },
+        EXPONENTIAL {
+            @Override
+            long nextMillis(long meanMillis) {
+                return exponentialMillis(meanMillis);
+            }
+        };
+
+        abstract long nextMillis(long meanMillis);
+    }
+
+    private final RedisLockRegistry lockRegistry;
+    private final String appName;
+    private final String lockName;
+    private final int keys;
+    private final ArrivalModel arrivalModel;
+    private final int contenders;
+    private final double arrivalsPerSecond;
+    private final HoldTimeDistribution holdTimeDistribution;
+    private final long holdMeanMillis;
+    private final long thinkMeanMillis;
+    private final Duration lockMaxWait;
+    private final LockRetryPolicy lockRetryPolicy;
+    private final Duration runDuration;
+
+    //micros, from the intended start of an attempt until the lock is held
+    private final Histogram acquireLatency = new ConcurrentHistogram(3);
+    //micros, from the intended start of an attempt until the lock is released or the attempt failed
+    private final Histogram attemptLatency = new ConcurrentHistogram(3);
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public LoadGenerator(RedisLockRegistry lockRegistry,
+                         String appName,
+                         String lockName,
+                         int keys,
+                         ArrivalModel arrivalModel,
+                         int contenders,
+                         double arrivalsPerSecond,
+                         HoldTimeDistribution holdTimeDistribution,
+                         long holdMeanMillis,
+                         long thinkMeanMillis,
+                         Duration lockMaxWait,
+                         LockRetryPolicy lockRetryPolicy,
+                         Duration runDuration) {
+        if (keys < 1 || contenders < 1 || arrivalsPerSecond <= 0) {
+            throw new IllegalArgumentException(String.format("Keys, contenders and arrival rate must be positive, got: %d, %d, %f",
+                    keys, contenders, arrivalsPerSecond));
+        }
+        this.lockRegistry = lockRegistry;
+        this.appName = appName;
+        this.lockName = lockName;
+        this.keys = keys;
+        this.arrivalModel = arrivalModel;
+        this.contenders = contenders;
+        this.arrivalsPerSecond = arrivalsPerSecond;
+        this.holdTimeDistribution = holdTimeDistribution;
+        this.holdMeanMillis = holdMeanMillis;
+        this.thinkMeanMillis = thinkMeanMillis;
+        this.lockMaxWait = lockMaxWait;
+        this.lockRetryPolicy = lockRetryPolicy;
+        this.runDuration = runDuration;
+    }
+
+    public void run() {
+        LOG.info("{} starts a {} load run for {} on {} keys '{}:*'", appName, arrivalModel, runDuration, keys, lockName);
+        ExecutorService executor = newContenderExecutor();
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + runDuration.toNanos();
+        try {
+            if (arrivalModel == ArrivalModel.OPEN) {
+                dispatchArrivals(executor, startNanos, endNanos);
+            } else {
+                for (int i = 0; i < contenders; i++) {
+                    executor.execute(() -> contend(endNanos));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            //contenders may still wait for or hold a lock when the run ends
+            if (!executor.awaitTermination(lockMaxWait.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS)) {
+                LOG.warn("Contenders did not finish in time, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Thread interrupted");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logSummary(System.nanoTime() - startNanos);
+    }
+
+    private void dispatchArrivals(ExecutorService executor, long startNanos, long endNanos) {
+        long nextArrivalNanos = startNanos;
+        while (nextArrivalNanos < endNanos && !Thread.currentThread().isInterrupted()) {
+            long delayNanos = nextArrivalNanos - System.nanoTime();
+            if (delayNanos > 0) {
+                LockSupport.parkNanos(delayNanos);
+            }
+            long intendedStartNanos = nextArrivalNanos;
+            executor.execute(() -> attempt(intendedStartNanos));
+            nextArrivalNanos += (long) (exponential(1d / arrivalsPerSecond) * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private void contend(long endNanos) {
+        while (System.nanoTime() < endNanos) {
+            attempt(System.nanoTime());
+            try {
+                Thread.sleep(exponentialMillis(thinkMeanMillis));
+            } catch (InterruptedException e) {
+                LOG.warn("Thread interrupted");
+                return;
+            }
+        }
+    }
+
+    private void attempt(long intendedStartNanos) {
+        String key = lockName + ":" + ThreadLocalRandom.current().nextInt(keys);
+        try {
+            boolean lockObtained = lockRegistry.obtain(key).withLock(() -> {
+                acquireLatency.recordValue(micros(System.nanoTime() - intendedStartNanos));
+                try {
+                    Thread.sleep(holdTimeDistribution.nextMillis(holdMeanMillis));
+                } catch (InterruptedException e) {
+                    LOG.warn("Thread interrupted");
+                    Thread.currentThread().interrupt();
+                }
+            }, lockMaxWait, lockRetryPolicy);
+            (lockObtained ? acquired : busy).increment();
+        } catch (RuntimeException e) {
+            LOG.warn("LOCK '{}', attempt failed", key, e);
+            failed.increment();
+        }
+        attemptLatency.recordValue(micros(System.nanoTime() - intendedStartNanos));
+    }
+
+    private void logSummary(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long attempts = acquired.sum() + busy.sum() + failed.sum();
+        LOG.info("{} finished the load run after {} s: {} attempts ({} /s), {} acquired ({} /s), {} busy, {} failed",
+                appName, String.format("%.1f", elapsedSeconds),
+                attempts, String.format("%.1f", attempts / elapsedSeconds),
+                acquired.sum(), String.format("%.1f", acquired.sum() / elapsedSeconds),
+                busy.sum(), failed.sum());
+        logLatency("acquire", acquireLatency);
+        logLatency("attempt", attemptLatency);
+    }
+
+    private static void logLatency(String name, Histogram histogram) {
+        LOG.info("{} latency in micros: p50={} p99={} p999={} max={} count={}", name,
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMaxValue(), histogram.getTotalCount());
+    }
+
+    /**
+     * Virtual threads (Java 21+) make thousands of contenders cheap, they are looked up reflectively
+     * as the application still targets Java 8. Older JVMs fall back to one platform thread per contender.
+     */
+    private static ExecutorService newContenderExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            LOG.info("Contenders run on virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.info("Virtual threads are not available, contenders run on platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static long exponentialMillis(long meanMillis) {
+        return Math.round(exponential(meanMillis));
+    }
+
+    private static double exponential(double mean) {
+        return -mean * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
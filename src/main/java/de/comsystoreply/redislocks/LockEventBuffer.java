@@ -0,0 +1,127 @@
+package de.comsystoreply.redislocks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free ring buffer of preallocated lock event records.
+ * Producers never block: when the buffer is full an event is dropped according to the {@link MetricsReporter.OverflowPolicy}.
+ * Each slot carries a sequence number telling whether it is free for the producer of a round or filled for its consumer.
+ */
+final class LockEventBuffer {
+
+    interface EventConsumer {
+        void accept(LockEventType type, long timestamp, String lockName, String appName, String lockId, long value, String instance);
+    }
+
+    private final Event[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final MetricsReporter.OverflowPolicy overflowPolicy;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    LockEventBuffer(int capacity, MetricsReporter.OverflowPolicy overflowPolicy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.events = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    void offer(LockEventType type, long timestamp, String lockName, String appName, String lockId, long value, String instance) {
+        while (true) {
+            long position = producerPosition.get();
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    events[index].set(type, timestamp, lockName, appName, lockId, value, instance);
+                    sequences.lazySet(index, position + 1);
+                    return;
+                }
+            } else if (available < 0) {
+                if (overflowPolicy == MetricsReporter.OverflowPolicy.DROP_NEWEST) {
+                    droppedEvents.increment();
+                    return;
+                }
+                if (poll(null)) {
+                    droppedEvents.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return amount of events handed over to the consumer
+     */
+    int drain(EventConsumer consumer, int maxEvents) {
+        int drained = 0;
+        while (drained < maxEvents && poll(consumer)) {
+            drained++;
+        }
+        return drained;
+    }
+
+    long droppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    private boolean poll(EventConsumer consumer) {
+        while (true) {
+            long position = consumerPosition.get();
+            int index = (int) position & mask;
+            long filled = sequences.get(index) - (position + 1);
+            if (filled < 0) {
+                return false;
+            }
+            if (filled == 0 && consumerPosition.compareAndSet(position, position + 1)) {
+                Event event = events[index];
+                LockEventType type = event.type;
+                long timestamp = event.timestamp;
+                String lockName = event.lockName;
+                String appName = event.appName;
+                String lockId = event.lockId;
+                long value = event.value;
+                String instance = event.instance;
+                event.clear();
+                //hand the slot back to the producers of the next round before calling the consumer
+                sequences.lazySet(index, position + mask + 1);
+                if (consumer != null) {
+                    consumer.accept(type, timestamp, lockName, appName, lockId, value, instance);
+                }
+                return true;
+            }
+        }
+    }
+
+    private static final class Event {
+        private LockEventType type;
+        private long timestamp;
+        private String lockName;
+        private String appName;
+        private String lockId;
+        private long value;
+        private String instance;
+
+        void set(LockEventType type, long timestamp, String lockName, String appName, String lockId, long value, String instance) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.lockName = lockName;
+            this.appName = appName;
+            this.lockId = lockId;
+            this.value = value;
+            this.instance = instance;
+        }
+
+        void clear() {
+            set(null, 0, null, null, null, 0, null);
+        }
+    }
+}
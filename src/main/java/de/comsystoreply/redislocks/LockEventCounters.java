@@ -0,0 +1,75 @@
+package de.comsystoreply.redislocks;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped counters of lock events per lock name and {@link LockEventType}, flushed as one count per window.
+ * Counting does not allocate once a lock name is known and does not contend between threads.
+ */
+final class LockEventCounters {
+
+    interface WindowConsumer {
+        void accept(LockEventType type, String lockName, String appName, long count);
+    }
+
+    //keyed by lock name only, the app name is the same for all locks of this JVM
+    private final ConcurrentMap<String, LockCounters> counters = new ConcurrentHashMap<>();
+
+    void increment(LockEventType type, String lockName, String appName) {
+        LockCounters lockCounters = counters.get(lockName);
+        if (lockCounters == null) {
+            lockCounters = counters.computeIfAbsent(lockName, name -> new LockCounters(appName));
+        }
+        lockCounters.counts[type.ordinal()].increment();
+    }
+
+    /**
+     * Hands out the counts since the last flush. The adders are never reset, as a reset would lose concurrent increments,
+     * the window count is the difference to the sum of the last flush instead. Lock names without events in the window
+     * are dropped to keep the memory bounded, an event counted concurrently to the removal may get lost.
+     * Must be called by a single thread only.
+     */
+    void flush(WindowConsumer consumer) {
+        Iterator<ConcurrentMap.Entry<String, LockCounters>> iterator = counters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            ConcurrentMap.Entry<String, LockCounters> entry = iterator.next();
+            LockCounters lockCounters = entry.getValue();
+            boolean idle = true;
+            for (LockEventType type : LockEventType.values()) {
+                long count = lockCounters.windowCount(type);
+                if (count > 0) {
+                    idle = false;
+                    consumer.accept(type, entry.getKey(), lockCounters.appName, count);
+                }
+            }
+            if (idle) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class LockCounters {
+        private final String appName;
+        private final LongAdder[] counts = new LongAdder[LockEventType.values().length];
+        //owned by the flushing thread
+        private final long[] flushedCounts = new long[counts.length];
+
+        LockCounters(String appName) {
+            this.appName = appName;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        long windowCount(LockEventType type) {
+            int i = type.ordinal();
+            long total = counts[i].sum();
+            long count = total - flushedCounts[i];
+            flushedCounts[i] = total;
+            return count;
+        }
+    }
+}
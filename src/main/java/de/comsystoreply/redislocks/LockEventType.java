@@ -0,0 +1,46 @@
+package de.comsystoreply.redislocks;
+
+public enum LockEventType {
+    LOCK_ATTEMPT("lockAttempt", null, null),
+    LOCK_BUSY("lockBusy", null, null),
+    LOCK_GATED("lockGated", null, null),
+    LOCK_SUCCESS("lockSuccess", null, null),
+    LOCK_EXPIRED("lockRace", "unknown", "lockExceedDuration"),
+    LOCK_RACE("lockRace", "race", "lockExceedDuration"),
+    QUORUM_ACQUIRE("quorumAcquire", null, "acquireLatencyMicros"),
+    READ_LOCK_SUCCESS("readLockSuccess", null, "readers"),
+    WRITE_LOCK_WAITING("writeLockWaiting", null, "readers"),
+    PERMIT_SUCCESS("permitSuccess", null, "permitsInUse"),
+    LOCK_QUEUED("lockQueued", null, "queuePosition"),
+    LOCK_QUEUE_WAIT("lockQueueWait", null, "waitMillis"),
+    SHARDS_CLAIMED("shardsClaimed", null, "claimed"),
+    POOL_EXHAUSTED("poolExhausted", null, "borrowWaitMillis");
+
+    private final String eventType;
+    private final String raceType;
+    private final String valueField;
+
+    LockEventType(String eventType, String raceType, String valueField) {
+        this.eventType = eventType;
+        this.raceType = raceType;
+        this.valueField = valueField;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return the raceType tag or null if the event is not a race
+     */
+    public String getRaceType() {
+        return raceType;
+    }
+
+    /**
+     * @return the name of the field carrying the numeric value of the event or null if the event has none
+     */
+    public String getValueField() {
+        return valueField;
+    }
+}
@@ -0,0 +1,136 @@
+package de.comsystoreply.redislocks;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms per lock name and {@link LockLatencyType}, in micros.
+ * Recording is wait-free and does not allocate once a lock name is known; the exporter swaps out the
+ * interval histogram of every recorder without stopping the recording threads.
+ * <p>
+ * A recorder takes about 60 KB and is only created for the types recorded for a lock name. At most maxLockNames
+ * names are tracked, e.g. of a lock registry with many entity locks, the latencies of all further names are
+ * recorded under {@link #OVERFLOW_LOCK_NAME}.
+ */
+final class LockLatencyRecorders {
+
+    interface IntervalConsumer {
+        void accept(LockLatencyType type, String lockName, String appName, Histogram interval);
+    }
+
+    static final String OVERFLOW_LOCK_NAME = "otherLocks";
+
+    //longer latencies are recorded as one minute
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    //keyed by lock name only, the app name is the same for all locks of this JVM
+    private final ConcurrentMap<String, LockLatencies> latencies = new ConcurrentHashMap<>();
+    private final int maxLockNames;
+    private volatile LockLatencies overflow;
+
+    LockLatencyRecorders(int maxLockNames) {
+        this.maxLockNames = maxLockNames;
+    }
+
+    void record(LockLatencyType type, String lockName, String appName, long nanos) {
+        LockLatencies lockLatencies = latencies.get(lockName);
+        if (lockLatencies == null) {
+            lockLatencies = latencies.size() < maxLockNames
+                    ? latencies.computeIfAbsent(lockName, name -> new LockLatencies(appName))
+                    : overflow(appName);
+        }
+        long micros = Math.min(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)), HIGHEST_TRACKABLE_MICROS);
+        lockLatencies.recorder(type).recordValue(micros);
+    }
+
+    /**
+     * Hands out the histograms recorded since the last export. Lock names without any recording in the interval are
+     * dropped to keep the memory bounded, a value recorded concurrently to the removal may get lost.
+     * Must be called by a single thread only.
+     */
+    void export(IntervalConsumer consumer) {
+        Iterator<ConcurrentMap.Entry<String, LockLatencies>> iterator = latencies.entrySet().iterator();
+        while (iterator.hasNext()) {
+            ConcurrentMap.Entry<String, LockLatencies> entry = iterator.next();
+            LockLatencies lockLatencies = entry.getValue();
+            boolean idle = true;
+            for (LockLatencyType type : LockLatencyType.values()) {
+                Histogram interval = lockLatencies.intervalHistogram(type);
+                if (interval.getTotalCount() > 0) {
+                    idle = false;
+                    consumer.accept(type, entry.getKey(), lockLatencies.appName, interval);
+                }
+            }
+            if (idle) {
+                iterator.remove();
+            }
+        }
+        LockLatencies overflowLatencies = overflow;
+        if (overflowLatencies != null) {
+            for (LockLatencyType type : LockLatencyType.values()) {
+                Histogram interval = overflowLatencies.intervalHistogram(type);
+                if (interval.getTotalCount() > 0) {
+                    consumer.accept(type, OVERFLOW_LOCK_NAME, overflowLatencies.appName, interval);
+                }
+            }
+        }
+    }
+
+    private LockLatencies overflow(String appName) {
+        LockLatencies overflowLatencies = overflow;
+        if (overflowLatencies == null) {
+            synchronized (this) {
+                overflowLatencies = overflow;
+                if (overflowLatencies == null) {
+                    overflowLatencies = new LockLatencies(appName);
+                    overflow = overflowLatencies;
+                }
+            }
+        }
+        return overflowLatencies;
+    }
+
+    private static final Histogram EMPTY = new Histogram(2, SIGNIFICANT_DIGITS);
+
+    private static final class LockLatencies {
+        private final String appName;
+        //created on the first recording of a type, most lock names never see e.g. BORROW
+        private final AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<>(LockLatencyType.values().length);
+        //recycled by the exporter
+        private final Histogram[] intervals = new Histogram[recorders.length()];
+
+        LockLatencies(String appName) {
+            this.appName = appName;
+        }
+
+        Recorder recorder(LockLatencyType type) {
+            int i = type.ordinal();
+            Recorder recorder = recorders.get(i);
+            if (recorder == null) {
+                recorders.compareAndSet(i, null, new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+                recorder = recorders.get(i);
+            }
+            return recorder;
+        }
+
+        /**
+         * @return the histogram of the interval, empty if the type was never recorded
+         */
+        Histogram intervalHistogram(LockLatencyType type) {
+            int i = type.ordinal();
+            Recorder recorder = recorders.get(i);
+            if (recorder == null) {
+                return EMPTY;
+            }
+            intervals[i] = recorder.getIntervalHistogram(intervals[i]);
+            return intervals[i];
+        }
+    }
+}
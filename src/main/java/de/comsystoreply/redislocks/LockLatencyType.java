@@ -0,0 +1,22 @@
+package de.comsystoreply.redislocks;
+
+public enum LockLatencyType {
+    ACQUIRE("acquire"),
+    HOLD("hold"),
+    RELEASE("release"),
+    //wait for a pooled Redis connection
+    BORROW("borrow");
+
+    private final String phase;
+
+    LockLatencyType(String phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * @return the phase tag of the exported latency percentiles
+     */
+    public String getPhase() {
+        return phase;
+    }
+}
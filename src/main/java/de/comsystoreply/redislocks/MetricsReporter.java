@@ -1,38 +1,260 @@
 package de.comsystoreply.redislocks;
 
-import org.influxdb.InfluxDB;
-import org.influxdb.dto.Point;
-import org.springframework.data.util.Pair;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
 
-public class MetricsReporter {
-    private final InfluxDB influxDb;
+public class MetricsReporter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsReporter.class);
 
-    public MetricsReporter(InfluxDB influxDb) {
-        this.influxDb = influxDb;
+    private static final int MAX_DRAIN_BATCH = 1024;
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+
+    private final LineProtocolWriter lineWriter;
+    private final LockEventBuffer lockEvents;
+    private final LockLatencyRecorders lockLatencies;
+    private final LockEventCounters lockEventCounters;
+    private final double rawSampleRate;
+    private final List<ConnectionPoolGauge> connectionPools = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService drainer;
+    private long reportedDroppedEvents;
+
+    /**
+     * @param flushIntervalMillis how long points wait at most for their batch to be sent
+     * @param maxLatencyLockNames how many lock names get latency histograms of their own, the others share one
+     * @param rollupWindowMillis  window of the event counts, 0 disables the rollup and writes a point per event
+     * @param rawSampleRate       share of the events written as point in addition to the rollup, races are always written
+     */
+    public MetricsReporter(LineProtocolWriter lineWriter, int bufferSize, OverflowPolicy overflowPolicy, long drainIntervalMillis,
+                           long flushIntervalMillis, long latencyIntervalMillis, int maxLatencyLockNames, long rollupWindowMillis,
+                           double rawSampleRate) {
+        this.lineWriter = lineWriter;
+        this.lockLatencies = new LockLatencyRecorders(maxLatencyLockNames);
+        this.lockEvents = new LockEventBuffer(bufferSize, overflowPolicy);
+        this.lockEventCounters = rollupWindowMillis > 0 ? new LockEventCounters() : null;
+        this.rawSampleRate = rawSampleRate;
+        this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.drainer.scheduleWithFixedDelay(this::drainLockEvents, drainIntervalMillis, drainIntervalMillis, TimeUnit.MILLISECONDS);
+        this.drainer.scheduleWithFixedDelay(this::flushLines, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        this.drainer.scheduleAtFixedRate(this::exportLockLatencies, latencyIntervalMillis, latencyIntervalMillis, TimeUnit.MILLISECONDS);
+        this.drainer.scheduleAtFixedRate(this::exportConnectionPools, latencyIntervalMillis, latencyIntervalMillis, TimeUnit.MILLISECONDS);
+        if (lockEventCounters != null) {
+            this.drainer.scheduleAtFixedRate(this::flushLockEventCounts, rollupWindowMillis, rollupWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records a lock event without blocking and without allocating, the event is written to InfluxDB
+     * asynchronously by the drainer thread. If the buffer is full the event is dropped according to the overflow policy.
+     * With the rollup enabled the event is counted and only races and sampled events are written as point.
+     */
+    public void recordLockEvent(LockEventType type, long timestamp, String lockName, String appName, String lockId, long value) {
+        recordLockEvent(type, timestamp, lockName, appName, lockId, value, null);
+    }
+
+    /**
+     * Records a lock event concerning a single Redis instance, which is added as instance tag.
+     */
+    public void recordLockEvent(LockEventType type, long timestamp, String lockName, String appName, String lockId, long value, String instance) {
+        if (lockEventCounters != null) {
+            lockEventCounters.increment(type, lockName, appName);
+            if (type.getRaceType() == null && ThreadLocalRandom.current().nextDouble() >= rawSampleRate) {
+                return;
+            }
+        }
+        lockEvents.offer(type, timestamp, lockName, appName, lockId, value, instance);
+    }
+
+    /**
+     * Records a latency of a lock without blocking, exported as percentiles of the interval instead of a point per call.
+     */
+    public void recordLockLatency(LockLatencyType type, String lockName, String appName, long nanos) {
+        lockLatencies.record(type, lockName, appName, nanos);
+    }
+
+    /**
+     * Reports the active, idle and waiting connections of a pool on every latency interval.
+     */
+    public void registerConnectionPool(String poolName, String appName, IntSupplier active, IntSupplier idle, IntSupplier waiters) {
+        connectionPools.add(new ConnectionPoolGauge(poolName, appName, active, idle, waiters));
+    }
+
+    public long droppedLockEvents() {
+        return lockEvents.droppedEvents();
+    }
+
+    private void drainLockEvents() {
+        try {
+            synchronized (lineWriter) {
+                while (lockEvents.drain(this::writeLockEvent, MAX_DRAIN_BATCH) == MAX_DRAIN_BATCH) {
+                    //keep draining until the buffer is empty
+                }
+                reportDroppedLockEvents();
+            }
+        } catch (RuntimeException e) {
+            //the drainer must survive an unavailable InfluxDB, events recorded meanwhile are dropped by the buffer
+            LOG.warn("Writing lock events failed", e);
+        }
+    }
+
+    private void writeLockEvent(LockEventType type, long timestamp, String lockName, String appName, String lockId, long value, String instance) {
+        lineWriter.measurement(lockName)
+                .tag("appName", appName)
+                .tag("eventType", type.getEventType());
+        if (instance != null) {
+            lineWriter.tag("instance", instance);
+        }
+        if (type.getRaceType() != null) {
+            lineWriter.tag("raceType", type.getRaceType());
+        }
+        lineWriter.field("lockId", lockId);
+        if (type.getValueField() != null) {
+            lineWriter.field(type.getValueField(), value);
+        }
+        lineWriter.end(timestamp);
     }
 
+    private void flushLockEventCounts() {
+        try {
+            long timestamp = System.currentTimeMillis();
+            synchronized (lineWriter) {
+                lockEventCounters.flush((type, lockName, appName, count) -> writeLockEventCount(timestamp, type, lockName, appName, count));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Writing lock event counts failed", e);
+        }
+    }
+
+    private void writeLockEventCount(long timestamp, LockEventType type, String lockName, String appName, long count) {
+        lineWriter.measurement(lockName)
+                .tag("appName", appName)
+                .tag("eventType", type.getEventType());
+        if (type.getRaceType() != null) {
+            lineWriter.tag("raceType", type.getRaceType());
+        }
+        lineWriter.tag("rollup", "true")
+                .field("count", count)
+                .end(timestamp);
+    }
+
+    private void exportLockLatencies() {
+        try {
+            long timestamp = System.currentTimeMillis();
+            synchronized (lineWriter) {
+                lockLatencies.export((type, lockName, appName, interval) -> writeLockLatency(timestamp, type, lockName, appName, interval));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Writing lock latencies failed", e);
+        }
+    }
+
+    private void writeLockLatency(long timestamp, LockLatencyType type, String lockName, String appName, Histogram interval) {
+        lineWriter.measurement(lockName)
+                .tag("appName", appName)
+                .tag("eventType", "lockLatency")
+                .tag("phase", type.getPhase())
+                .field("count", interval.getTotalCount())
+                .field("p50Micros", interval.getValueAtPercentile(50))
+                .field("p99Micros", interval.getValueAtPercentile(99))
+                .field("p999Micros", interval.getValueAtPercentile(99.9))
+                .field("maxMicros", interval.getMaxValue())
+                .end(timestamp);
+    }
+
+    private void exportConnectionPools() {
+        try {
+            long timestamp = System.currentTimeMillis();
+            synchronized (lineWriter) {
+                for (ConnectionPoolGauge pool : connectionPools) {
+                    lineWriter.measurement(pool.poolName)
+                            .tag("appName", pool.appName)
+                            .tag("eventType", "connectionPool")
+                            .field("active", pool.active.getAsInt())
+                            .field("idle", pool.idle.getAsInt())
+                            .field("waiters", pool.waiters.getAsInt())
+                            .end(timestamp);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Writing connection pools failed", e);
+        }
+    }
+
+    private void flushLines() {
+        try {
+            synchronized (lineWriter) {
+                lineWriter.flush();
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Flushing metrics failed", e);
+        }
+    }
+
+    private void reportDroppedLockEvents() {
+        long droppedEvents = lockEvents.droppedEvents();
+        if (droppedEvents == reportedDroppedEvents) {
+            return;
+        }
+        LOG.warn("{} lock events dropped since last report, metrics buffer is full", droppedEvents - reportedDroppedEvents);
+        lineWriter.measurement("metricsReporter")
+                .field("droppedLockEvents", droppedEvents - reportedDroppedEvents)
+                .end(System.currentTimeMillis());
+        reportedDroppedEvents = droppedEvents;
+    }
 
-    public final void collectMetric(long timestamp, String groupValue,
-                                    Collection<Pair<String, String>> tags,
-                                    Collection<Pair<String, Object>> fields) {
-        Point.Builder builder = Point.measurement(groupValue)
-                .time(timestamp, TimeUnit.MILLISECONDS);
-        for (Pair<String, Object> field : fields) {
-            if (field.getSecond() instanceof Number)
-                builder.addField(field.getFirst(), Number.class.cast(field.getSecond()));
-            if (field.getSecond() instanceof String)
-                builder.addField(field.getFirst(), String.class.cast(field.getSecond()));
-            if (field.getSecond() instanceof Boolean)
-                builder.addField(field.getFirst(), Boolean.class.cast(field.getSecond()));
+    @Override
+    public void close() {
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            LOG.warn("Thread interrupted");
+            Thread.currentThread().interrupt();
+        }
+        drainLockEvents();
+        exportLockLatencies();
+        if (lockEventCounters != null) {
+            flushLockEventCounts();
+        }
+        synchronized (lineWriter) {
+            try {
+                lineWriter.close();
+            } catch (IOException e) {
+                LOG.warn("Closing the metrics transport failed", e);
+            }
         }
-        for (Pair<String, String> tag : tags) {
-            builder.tag(tag.getFirst(), tag.getSecond());
+    }
+
+    private static final class ConnectionPoolGauge {
+        private final String poolName;
+        private final String appName;
+        private final IntSupplier active;
+        private final IntSupplier idle;
+        private final IntSupplier waiters;
+
+        private ConnectionPoolGauge(String poolName, String appName, IntSupplier active, IntSupplier idle, IntSupplier waiters) {
+            this.poolName = poolName;
+            this.appName = appName;
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
         }
-        Point point = builder.build();
-        //save due to enabled batch by default
-        influxDb.write(point);
     }
 }
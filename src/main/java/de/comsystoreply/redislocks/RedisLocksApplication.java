@@ -19,10 +19,14 @@ public class RedisLocksApplication {
         ApplicationContext context = SpringApplication.run(RedisLocksApplication.class, args);
         if (args.length != 1) {
             throw new IllegalArgumentException("Got wrong amount of arguments, expected: " +
-                    "'long cyclesAmount' " +
+                    "'long cyclesAmount' or 'load' " +
                     "got:" + Arrays.toString(args)
             );
         }
+        if ("load".equals(args[0])) {
+            context.getBean(LoadGenerator.class).run();
+            return;
+        }
         long cyclesAmount = Long.valueOf(args[0]);
         if (cyclesAmount < 0) {
             throw new IllegalArgumentException(String.format("All arguments must be positive, got: %d", cyclesAmount));
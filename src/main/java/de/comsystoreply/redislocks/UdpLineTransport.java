@@ -0,0 +1,63 @@
+package de.comsystoreply.redislocks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends batches fire-and-forget to the UDP listener of InfluxDB, split at line ends into datagrams of at most
+ * maxPacketBytes, so they are not fragmented. Lost datagrams are not noticed.
+ * Timestamps are written in nanoseconds, the default precision of the UDP listener.
+ */
+public final class UdpLineTransport implements LineProtocolWriter.Transport {
+    private final DatagramChannel channel;
+    private final int maxPacketBytes;
+
+    public UdpLineTransport(String host, int port, int maxPacketBytes) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.connect(new InetSocketAddress(host, port));
+        this.maxPacketBytes = maxPacketBytes;
+    }
+
+    @Override
+    public void send(byte[] lines, int length) throws IOException {
+        int packetStart = 0;
+        while (packetStart < length) {
+            int packetEnd = packetEnd(lines, packetStart, length);
+            channel.write(ByteBuffer.wrap(lines, packetStart, packetEnd - packetStart));
+            packetStart = packetEnd;
+        }
+    }
+
+    @Override
+    public TimeUnit precision() {
+        return TimeUnit.NANOSECONDS;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the end of the last complete line that fits into a packet, or of the first line if that alone is too long
+     */
+    private int packetEnd(byte[] lines, int packetStart, int length) {
+        if (length - packetStart <= maxPacketBytes) {
+            return length;
+        }
+        for (int i = packetStart + maxPacketBytes - 1; i > packetStart; i--) {
+            if (lines[i] == '\n') {
+                return i + 1;
+            }
+        }
+        for (int i = packetStart + maxPacketBytes; i < length; i++) {
+            if (lines[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
@@ -1,12 +1,18 @@
 package de.comsystoreply.redislocks.configuration;
 
 import de.comsystoreply.redislocks.App;
+import de.comsystoreply.redislocks.LoadGenerator;
+import de.comsystoreply.redislocks.locks.LockRetryPolicy;
 import de.comsystoreply.redislocks.locks.RedisLock;
+import de.comsystoreply.redislocks.locks.RedisLockRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+import java.time.Duration;
+
 @Configuration
 @Import(LocksConfig.class)
 public class ApplicationConfig {
@@ -14,10 +20,73 @@ public class ApplicationConfig {
     @Value("${application.name}")
     private String applicationName;
 
+    @Value("${application.locks.sweetroll.maxwait.millis:0}")
+    private long sweetrollLockMaxWaitMillis;
+
+    //empty waits for release notifications
+    @Value("${application.locks.retry.policy:}")
+    private LockRetryPolicy.Type lockRetryPolicyType;
+
+    @Value("${application.locks.retry.base.millis:50}")
+    private long lockRetryBaseMillis;
+
+    @Value("${application.locks.retry.max.millis:1000}")
+    private long lockRetryMaxMillis;
+
+    @Value("${application.load.keys:1}")
+    private int loadKeys;
+
+    @Value("${application.load.model:CLOSED}")
+    private LoadGenerator.ArrivalModel loadArrivalModel;
+
+    @Value("${application.load.contenders:100}")
+    private int loadContenders;
+
+    @Value("${application.load.arrival.rate:50}")
+    private double loadArrivalsPerSecond;
+
+    @Value("${application.load.hold.distribution:EXPONENTIAL}")
+    private LoadGenerator.HoldTimeDistribution loadHoldTimeDistribution;
+
+    @Value("${application.load.hold.mean.millis:50}")
+    private long loadHoldMeanMillis;
+
+    @Value("${application.load.think.mean.millis:500}")
+    private long loadThinkMeanMillis;
+
+    @Value("${application.load.maxwait.millis:0}")
+    private long loadLockMaxWaitMillis;
+
+    @Value("${application.load.duration.seconds:60}")
+    private long loadDurationSeconds;
+
     @Bean
-    public App app(RedisLock lock) {
-        return new App(lock, applicationName);
+    public App app(@Qualifier("sweetrollLock") RedisLock lock) {
+        return new App(lock, applicationName, Duration.ofMillis(sweetrollLockMaxWaitMillis), lockRetryPolicy());
     }
 
+    @Bean
+    public LoadGenerator loadGenerator(RedisLockRegistry lockRegistry) {
+        return new LoadGenerator(
+                lockRegistry,
+                applicationName,
+                "sweetroll",
+                loadKeys,
+                loadArrivalModel,
+                loadContenders,
+                loadArrivalsPerSecond,
+                loadHoldTimeDistribution,
+                loadHoldMeanMillis,
+                loadThinkMeanMillis,
+                Duration.ofMillis(loadLockMaxWaitMillis),
+                lockRetryPolicy(),
+                Duration.ofSeconds(loadDurationSeconds)
+        );
+    }
 
+    private LockRetryPolicy lockRetryPolicy() {
+        return lockRetryPolicyType == null
+                ? null
+                : LockRetryPolicy.of(lockRetryPolicyType, lockRetryBaseMillis, lockRetryMaxMillis);
+    }
 }
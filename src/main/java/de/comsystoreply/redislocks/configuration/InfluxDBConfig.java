@@ -1,21 +1,27 @@
 package de.comsystoreply.redislocks.configuration;
 
-import org.influxdb.InfluxDB;
-import org.influxdb.InfluxDBFactory;
-import org.influxdb.dto.Pong;
+import de.comsystoreply.redislocks.HttpLineTransport;
+import de.comsystoreply.redislocks.LineProtocolWriter;
+import de.comsystoreply.redislocks.UdpLineTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.net.URL;
 
 @Configuration
 public class InfluxDBConfig {
 
     private static final Logger LOG = LoggerFactory.getLogger(InfluxDBConfig.class);
 
+    public enum TransportType {
+        HTTP,
+        UDP
+    }
+
     @Value("${application.influxdb.url}")
     private String influxDbUrl;
 
@@ -28,13 +34,36 @@ public class InfluxDBConfig {
     @Value("${application.influxdb.password}")
     private String influxDbPassword;
 
-    @Bean
-    public InfluxDB influxDB() {
-        InfluxDB influxDB = InfluxDBFactory.connect(influxDbUrl, influxDbUser, influxDbPassword);
-        influxDB.setDatabase(influxDbName);
-        influxDB.enableBatch(100, 10, TimeUnit.SECONDS);
-        Pong pong = influxDB.ping();
-        LOG.info("Connection with influxdb at {}:{} established for user {} with reponse {}", influxDbUrl, influxDbName, influxDbUser, pong);
-        return influxDB;
+    @Value("${application.influxdb.transport:HTTP}")
+    private TransportType transportType;
+
+    @Value("${application.influxdb.gzip:true}")
+    private boolean gzip;
+
+    @Value("${application.influxdb.timeout.millis:5000}")
+    private int timeoutMillis;
+
+    @Value("${application.influxdb.udp.port:8089}")
+    private int udpPort;
+
+    @Value("${application.influxdb.udp.packet.bytes:1400}")
+    private int udpPacketBytes;
+
+    @Value("${application.influxdb.batch.size:1000}")
+    private int batchSize;
+
+    @Bean(destroyMethod = "")
+    public LineProtocolWriter lineProtocolWriter() throws IOException {
+        //closed by the MetricsReporter after its last points are written
+        if (transportType == TransportType.UDP) {
+            String host = new URL(influxDbUrl).getHost();
+            LOG.info("Sending metrics to influxdb at {}:{} via UDP in batches of {}", host, udpPort, batchSize);
+            return new LineProtocolWriter(new UdpLineTransport(host, udpPort, udpPacketBytes), batchSize);
+        }
+        HttpLineTransport transport = new HttpLineTransport(influxDbUrl, influxDbName, influxDbUser, influxDbPassword, gzip, timeoutMillis);
+        String version = transport.ping();
+        LOG.info("Connection with influxdb at {}:{} established for user {} with version {}, gzip {}, batches of {}",
+                influxDbUrl, influxDbName, influxDbUser, version, gzip, batchSize);
+        return new LineProtocolWriter(transport, batchSize);
     }
 }
@@ -0,0 +1,113 @@
+package de.comsystoreply.redislocks.configuration;
+
+import de.comsystoreply.redislocks.LockEventType;
+import de.comsystoreply.redislocks.LockLatencyType;
+import de.comsystoreply.redislocks.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled Jedis connections reporting to the {@link MetricsReporter}: the wait for every borrowed connection
+ * as borrow latency of the pool, a borrow timing out on an exhausted pool as event and the active, idle
+ * and waiting connections of the pool on every latency interval. The pool is filled up to its min idle connections on start.
+ */
+public class InstrumentedJedisConnectionFactory extends JedisConnectionFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentedJedisConnectionFactory.class);
+
+    private final MetricsReporter metricsReporter;
+    private final String poolName;
+    private final String appName;
+    private Pool<Jedis> pool;
+
+    public InstrumentedJedisConnectionFactory(RedisStandaloneConfiguration standaloneConfig,
+                                              JedisClientConfiguration clientConfig,
+                                              MetricsReporter metricsReporter,
+                                              String poolName,
+                                              String appName) {
+        super(standaloneConfig, clientConfig);
+        this.metricsReporter = metricsReporter;
+        this.poolName = poolName;
+        this.appName = appName;
+    }
+
+    public InstrumentedJedisConnectionFactory(RedisSentinelConfiguration sentinelConfig,
+                                              JedisClientConfiguration clientConfig,
+                                              MetricsReporter metricsReporter,
+                                              String poolName,
+                                              String appName) {
+        super(sentinelConfig, clientConfig);
+        this.metricsReporter = metricsReporter;
+        this.poolName = poolName;
+        this.appName = appName;
+    }
+
+    @Override
+    protected Pool<Jedis> createRedisPool() {
+        return instrument(super.createRedisPool());
+    }
+
+    @Override
+    protected Pool<Jedis> createRedisSentinelPool(RedisSentinelConfiguration config) {
+        return instrument(super.createRedisSentinelPool(config));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        int minIdle = getPoolConfig().getMinIdle();
+        if (pool == null || minIdle == 0) {
+            return;
+        }
+        try {
+            pool.addObjects(minIdle);
+            LOG.info("POOL '{}', warmed up with {} connections", poolName, minIdle);
+        } catch (JedisException e) {
+            //not fatal, the connections are opened on demand then
+            LOG.warn("POOL '{}', warm up failed", poolName, e);
+        }
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        long borrowNanos = System.nanoTime();
+        try {
+            RedisConnection connection = super.getConnection();
+            metricsReporter.recordLockLatency(LockLatencyType.BORROW, poolName, appName, System.nanoTime() - borrowNanos);
+            return connection;
+        } catch (RedisConnectionFailureException e) {
+            if (isExhausted(e)) {
+                long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - borrowNanos);
+                LOG.warn("POOL '{}', no connection available after {} ms - pool exhausted", poolName, waitMillis);
+                metricsReporter.recordLockEvent(LockEventType.POOL_EXHAUSTED, System.currentTimeMillis(), poolName, appName, "", waitMillis);
+            }
+            throw e;
+        }
+    }
+
+    private Pool<Jedis> instrument(Pool<Jedis> pool) {
+        this.pool = pool;
+        metricsReporter.registerConnectionPool(poolName, appName, pool::getNumActive, pool::getNumIdle, pool::getNumWaiters);
+        return pool;
+    }
+
+    private static boolean isExhausted(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoSuchElementException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
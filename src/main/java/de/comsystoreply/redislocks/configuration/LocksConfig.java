@@ -1,23 +1,43 @@
 package de.comsystoreply.redislocks.configuration;
 
 import de.comsystoreply.redislocks.MetricsReporter;
+import de.comsystoreply.redislocks.locks.DistributedLock;
+import de.comsystoreply.redislocks.locks.HeldLockCache;
+import de.comsystoreply.redislocks.locks.LocalLockGate;
+import de.comsystoreply.redislocks.locks.LockLeaseWatchdog;
+import de.comsystoreply.redislocks.locks.LockListener;
+import de.comsystoreply.redislocks.locks.LockReleaseSubscriber;
+import de.comsystoreply.redislocks.locks.LockScripts;
+import de.comsystoreply.redislocks.locks.LoggingLockListener;
+import de.comsystoreply.redislocks.locks.MetricsLockListener;
+import de.comsystoreply.redislocks.locks.RedisAsyncLock;
+import de.comsystoreply.redislocks.locks.RedisFairLock;
 import de.comsystoreply.redislocks.locks.RedisLock;
 import de.comsystoreply.redislocks.locks.RedisLockBroken;
-import de.comsystoreply.redislocks.locks.RedisLockWithDeleteCheck;
-import de.comsystoreply.redislocks.locks.RedisLockWithDeleteCheckAndLogging;
+import de.comsystoreply.redislocks.locks.RedisLockRegistry;
+import de.comsystoreply.redislocks.locks.RedisMultiLock;
+import de.comsystoreply.redislocks.locks.RedisReadWriteLock;
+import de.comsystoreply.redislocks.locks.RedisSemaphore;
+import de.comsystoreply.redislocks.locks.RedisShardClaims;
+import de.comsystoreply.redislocks.locks.TracingLockListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
-import java.util.function.Supplier;
+import java.util.function.LongSupplier;
 
 @Configuration
-@Import({RedisConfig.class, MetricsConfig.class})
+@Import({RedisConfig.class, MetricsConfig.class, QuorumLocksConfig.class})
 public class LocksConfig {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocksConfig.class);
@@ -28,19 +48,270 @@ public class LocksConfig {
     @Value("${application.locks.sweetroll.expiration.millis:5000}")
     private long sweetrolllockExpirationMillis;
 
+    @Value("${application.locks.multi.expiration.millis:5000}")
+    private long multiLockExpirationMillis;
+
+    @Value("${application.locks.claims.expiration.millis:60000}")
+    private long shardClaimExpirationMillis;
+
+    @Value("${application.locks.claims.batch.size:500}")
+    private int shardClaimBatchSize;
+
+    @Value("${application.locks.readwrite.expiration.millis:5000}")
+    private long readWriteLockExpirationMillis;
+
+    @Value("${application.locks.fair.expiration.millis:5000}")
+    private long fairLockExpirationMillis;
+
+    @Value("${application.locks.semaphore.lease.millis:5000}")
+    private long semaphoreLeaseMillis;
+
+    @Value("${application.locks.semaphore.permits:3}")
+    private int semaphorePermits;
+
+    @Value("${application.locks.registry.expiration.millis:5000}")
+    private long registryLockExpirationMillis;
+
+    @Value("${application.locks.registry.lease.enabled:false}")
+    private boolean registryLockLeaseEnabled;
+
+    @Value("${application.locks.registry.max.size:10000}")
+    private int registryMaxSize;
+
+    @Value("${application.locks.registry.idle.millis:60000}")
+    private long registryIdleMillis;
+
+    @Value("${application.locks.sweetroll.lease.enabled:false}")
+    private boolean sweetrollLockLeaseEnabled;
+
+    @Value("${application.locks.nearcache.enabled:false}")
+    private boolean nearCacheEnabled;
+
+    @Value("${application.locks.nearcache.max.size:10000}")
+    private int nearCacheMaxSize;
+
+    @Value("${application.locks.nearcache.key.pattern:sweetroll*}")
+    private String nearCacheKeyPattern;
+
+    @Value("${application.locks.lease.tick.millis:250}")
+    private long leaseTickMillis;
+
+    @Value("${application.locks.metrics.enabled:true}")
+    private boolean lockMetricsEnabled;
+
+    @Value("${application.locks.logging.enabled:true}")
+    private boolean lockLoggingEnabled;
+
+    @Value("${application.locks.tracing.enabled:false}")
+    private boolean lockTracingEnabled;
+
     @Bean
-    public Supplier<Long> timeSupplier() {
+    public LongSupplier timeSupplier() {
         return System::currentTimeMillis;
     }
 
+    @Bean
+    public LongSupplier nanoTimeSupplier() {
+        return System::nanoTime;
+    }
+
+    @Bean
+    public ApplicationRunner lockScriptsLoader(@Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate) {
+        return args -> {
+            try {
+                LockScripts.load(redisTemplate);
+            } catch (DataAccessException e) {
+                //not fatal, every script falls back to EVAL on its first NOSCRIPT reply
+                LOG.warn("Lock scripts could not be preloaded", e);
+            }
+        };
+    }
+
+    @Bean
+    public LockReleaseSubscriber lockReleaseSubscriber(RedisMessageListenerContainer redisMessageListenerContainer) {
+        return new LockReleaseSubscriber(redisMessageListenerContainer);
+    }
+
+    @Bean
+    public LockLeaseWatchdog lockLeaseWatchdog(@Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate) {
+        return new LockLeaseWatchdog(redisTemplate, leaseTickMillis);
+    }
+
+    @Bean
+    public HeldLockCache heldLockCache(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            RedisMessageListenerContainer redisMessageListenerContainer) {
+        HeldLockCache cache = new HeldLockCache(
+                redisTemplate,
+                redisMessageListenerContainer,
+                nanoTimeSupplier(),
+                nearCacheMaxSize,
+                nearCacheKeyPattern
+        );
+        if (nearCacheEnabled) {
+            cache.start();
+        }
+        return cache;
+    }
+
+    @Bean
+    public LocalLockGate localLockGate() {
+        return new LocalLockGate();
+    }
+
+    @Bean
+    public LockListener lockListener(MetricsReporter metricsReporter) {
+        //a disabled layer is left out, not just muted, so it costs nothing per lock attempt
+        return LockListener.compose(
+                lockMetricsEnabled ? new MetricsLockListener(metricsReporter, applicationName) : LockListener.NONE,
+                lockLoggingEnabled ? new LoggingLockListener() : LockListener.NONE,
+                lockTracingEnabled ? new TracingLockListener() : LockListener.NONE
+        );
+    }
+
     @Bean
     public RedisLock sweetrollLock(
-            RedisTemplate<String, String> redisTemplate,
-            MetricsReporter metricsReporter) {
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockListener lockListener,
+            LockReleaseSubscriber lockReleaseSubscriber,
+            LockLeaseWatchdog lockLeaseWatchdog,
+            HeldLockCache heldLockCache) {
         RedisLock lock = new RedisLock(
                 redisTemplate,
+                lockListener,
+                lockReleaseSubscriber,
+                sweetrollLockLeaseEnabled ? lockLeaseWatchdog : null,
+                localLockGate(),
+                nearCacheEnabled ? heldLockCache : null,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                sweetrolllockExpirationMillis,
+                "sweetroll",
+                applicationName
+        );
+        return lock;
+    }
+
+    @Bean
+    public RedisLockRegistry lockRegistry(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockListener lockListener,
+            LockReleaseSubscriber lockReleaseSubscriber,
+            LockLeaseWatchdog lockLeaseWatchdog) {
+        RedisLockRegistry registry = new RedisLockRegistry(
+                redisTemplate,
+                lockListener,
+                lockReleaseSubscriber,
+                registryLockLeaseEnabled ? lockLeaseWatchdog : null,
+                localLockGate(),
+                //the held lock cache only hears about the keys of its pattern, not about arbitrary registry names
+                null,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                registryLockExpirationMillis,
+                applicationName,
+                registryMaxSize,
+                registryIdleMillis
+        );
+        return registry;
+    }
+
+    @Bean
+    public RedisMultiLock multiLock(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockListener lockListener) {
+        RedisMultiLock lock = new RedisMultiLock(
+                redisTemplate,
+                lockListener,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                multiLockExpirationMillis,
+                applicationName
+        );
+        return lock;
+    }
+
+    @Bean
+    public RedisShardClaims shardClaims(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            MetricsReporter metricsReporter) {
+        RedisShardClaims claims = new RedisShardClaims(
+                redisTemplate,
+                metricsReporter,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                shardClaimExpirationMillis,
+                shardClaimBatchSize,
+                "shards",
+                applicationName
+        );
+        return claims;
+    }
+
+    @Bean
+    public RedisReadWriteLock sweetrollReadWriteLock(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockListener lockListener,
+            LockReleaseSubscriber lockReleaseSubscriber) {
+        RedisReadWriteLock lock = new RedisReadWriteLock(
+                redisTemplate,
+                lockListener,
+                lockReleaseSubscriber,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                readWriteLockExpirationMillis,
+                "sweetroll",
+                applicationName
+        );
+        return lock;
+    }
+
+    @Bean
+    public RedisFairLock sweetrollFairLock(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockListener lockListener,
+            LockReleaseSubscriber lockReleaseSubscriber) {
+        RedisFairLock lock = new RedisFairLock(
+                redisTemplate,
+                lockListener,
+                lockReleaseSubscriber,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                fairLockExpirationMillis,
+                "sweetroll:fair",
+                applicationName
+        );
+        return lock;
+    }
+
+    @Bean
+    public RedisSemaphore sweetrollSemaphore(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockListener lockListener,
+            LockReleaseSubscriber lockReleaseSubscriber) {
+        RedisSemaphore semaphore = new RedisSemaphore(
+                redisTemplate,
+                lockListener,
+                lockReleaseSubscriber,
+                timeSupplier(),
+                nanoTimeSupplier(),
+                semaphoreLeaseMillis,
+                semaphorePermits,
+                "sweetroll:permits",
+                applicationName
+        );
+        return semaphore;
+    }
+
+    @Bean
+    public RedisAsyncLock sweetrollAsyncLock(
+            ReactiveRedisTemplate<String, String> reactiveRedisTemplate,
+            MetricsReporter metricsReporter) {
+        RedisAsyncLock lock = new RedisAsyncLock(
+                reactiveRedisTemplate,
                 metricsReporter,
                 timeSupplier(),
+                nanoTimeSupplier(),
                 sweetrolllockExpirationMillis,
                 "sweetroll",
                 applicationName
@@ -50,7 +321,7 @@ public class LocksConfig {
 
     @Bean
     public RedisLockBroken sweetrollLockBroken(
-            RedisTemplate<String, String> redisTemplate) {
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate) {
         RedisLockBroken lock = new RedisLockBroken(
                 redisTemplate,
                 timeSupplier(),
@@ -62,11 +333,18 @@ public class LocksConfig {
     }
 
     @Bean
-    public RedisLockWithDeleteCheck sweetrollLock_withDeleteCheck(
-            RedisTemplate<String, String> redisTemplate) {
-        RedisLockWithDeleteCheck lock = new RedisLockWithDeleteCheck(
+    public DistributedLock sweetrollLock_withDeleteCheck(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockReleaseSubscriber lockReleaseSubscriber) {
+        DistributedLock lock = new RedisLock(
                 redisTemplate,
+                LockListener.NONE,
+                lockReleaseSubscriber,
+                null,
+                localLockGate(),
+                null,
                 timeSupplier(),
+                nanoTimeSupplier(),
                 sweetrolllockExpirationMillis,
                 "sweetroll",
                 applicationName
@@ -75,11 +353,18 @@ public class LocksConfig {
     }
 
     @Bean
-    public RedisLockWithDeleteCheckAndLogging sweetrollLock_withDeleteCheckAndLogging(
-            RedisTemplate<String, String> redisTemplate) {
-        RedisLockWithDeleteCheckAndLogging lock = new RedisLockWithDeleteCheckAndLogging(
+    public DistributedLock sweetrollLock_withDeleteCheckAndLogging(
+            @Qualifier("lockRedisTemplate") RedisTemplate<String, String> redisTemplate,
+            LockReleaseSubscriber lockReleaseSubscriber) {
+        DistributedLock lock = new RedisLock(
                 redisTemplate,
+                new LoggingLockListener(),
+                lockReleaseSubscriber,
+                null,
+                localLockGate(),
+                null,
                 timeSupplier(),
+                nanoTimeSupplier(),
                 sweetrolllockExpirationMillis,
                 "sweetroll",
                 applicationName
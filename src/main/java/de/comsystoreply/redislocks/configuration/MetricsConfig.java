@@ -1,9 +1,10 @@
 package de.comsystoreply.redislocks.configuration;
 
+import de.comsystoreply.redislocks.LineProtocolWriter;
 import de.comsystoreply.redislocks.MetricsReporter;
-import org.influxdb.InfluxDB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -14,9 +15,46 @@ public class MetricsConfig {
 
     private static final Logger LOG = LoggerFactory.getLogger(MetricsConfig.class);
 
+    @Value("${application.metrics.buffer.size:8192}")
+    private int bufferSize;
+
+    @Value("${application.metrics.buffer.overflow:DROP_OLDEST}")
+    private MetricsReporter.OverflowPolicy overflowPolicy;
+
+    @Value("${application.metrics.drain.interval.millis:200}")
+    private long drainIntervalMillis;
+
+    @Value("${application.influxdb.flush.interval.millis:1000}")
+    private long flushIntervalMillis;
+
+    @Value("${application.metrics.latency.interval.millis:10000}")
+    private long latencyIntervalMillis;
+
+    @Value("${application.metrics.latency.max.locks:100}")
+    private int maxLatencyLocks;
+
+    @Value("${application.metrics.rollup.enabled:false}")
+    private boolean rollupEnabled;
+
+    @Value("${application.metrics.rollup.window.millis:10000}")
+    private long rollupWindowMillis;
+
+    @Value("${application.metrics.rollup.raw.sample.rate:0.01}")
+    private double rollupRawSampleRate;
+
     @Bean
-    public MetricsReporter metricsReporter(InfluxDB influxDB) {
-        MetricsReporter metricsReporter = new MetricsReporter(influxDB);
+    public MetricsReporter metricsReporter(LineProtocolWriter lineProtocolWriter) {
+        MetricsReporter metricsReporter = new MetricsReporter(
+                lineProtocolWriter,
+                bufferSize,
+                overflowPolicy,
+                drainIntervalMillis,
+                flushIntervalMillis,
+                latencyIntervalMillis,
+                maxLatencyLocks,
+                rollupEnabled ? rollupWindowMillis : 0,
+                rollupRawSampleRate
+        );
         return metricsReporter;
     }
 }
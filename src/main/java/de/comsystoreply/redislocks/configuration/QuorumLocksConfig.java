@@ -0,0 +1,113 @@
+package de.comsystoreply.redislocks.configuration;
+
+import de.comsystoreply.redislocks.MetricsReporter;
+import de.comsystoreply.redislocks.locks.RedisQuorumLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Connections to independent Redis masters for the quorum lock, configured as comma separated host:port list, e.g.
+ * application.locks.quorum.nodes=localhost:6379,localhost:6380,localhost:6381
+ */
+@Configuration
+@ConditionalOnProperty("application.locks.quorum.nodes")
+public class QuorumLocksConfig implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QuorumLocksConfig.class);
+
+    @Value("${application.name:'unknown'}")
+    private String applicationName;
+
+    @Value("${application.locks.quorum.nodes}")
+    private String[] quorumNodes;
+
+    @Value("${application.locks.sweetroll.expiration.millis:5000}")
+    private long sweetrolllockExpirationMillis;
+
+    @Value("${application.locks.quorum.max.callers:16}")
+    private int quorumMaxCallers;
+
+    private final List<JedisConnectionFactory> connectionFactories = new ArrayList<>();
+    private ExecutorService executor;
+
+    @Bean
+    public RedisQuorumLock sweetrollQuorumLock(
+            MetricsReporter metricsReporter,
+            @Qualifier("timeSupplier") LongSupplier timeSupplier,
+            @Qualifier("nanoTimeSupplier") LongSupplier nanoTimeSupplier) {
+        List<RedisTemplate<String, String>> masters = new ArrayList<>();
+        for (String node : quorumNodes) {
+            masters.add(redisTemplate(node.trim()));
+        }
+        //every master of every concurrent caller needs its own thread, otherwise attempts would queue behind each other;
+        //nothing is queued, beyond max callers the caller sends its command itself
+        executor = new ThreadPoolExecutor(
+                quorumNodes.length,
+                quorumNodes.length * quorumMaxCallers,
+                60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "quorum-lock");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        LOG.info("Quorum lock will use masters {} for up to {} concurrent callers", Arrays.toString(quorumNodes), quorumMaxCallers);
+        RedisQuorumLock lock = new RedisQuorumLock(
+                masters,
+                Arrays.asList(quorumNodes),
+                executor,
+                metricsReporter,
+                timeSupplier,
+                nanoTimeSupplier,
+                sweetrolllockExpirationMillis,
+                "sweetroll",
+                applicationName
+        );
+        return lock;
+    }
+
+    private StringRedisTemplate redisTemplate(String node) {
+        String[] hostAndPort = node.split(":");
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(quorumMaxCallers);
+        poolConfig.setMaxIdle(quorumMaxCallers);
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(
+                new RedisStandaloneConfiguration(hostAndPort[0], Integer.parseInt(hostAndPort[1])),
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
+        connectionFactory.afterPropertiesSet();
+        connectionFactories.add(connectionFactory);
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        connectionFactories.forEach(JedisConnectionFactory::destroy);
+    }
+}
@@ -1,40 +1,173 @@
 package de.comsystoreply.redislocks.configuration;
 
+import de.comsystoreply.redislocks.MetricsReporter;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
 
 @Configuration
 public class RedisConfig {
 
     private static final Logger LOG = LoggerFactory.getLogger(RedisConfig.class);
 
+    private static final String NOT_CLUSTER = "!'${application.redis.mode:STANDALONE}'.equalsIgnoreCase('CLUSTER')";
+
+    public enum RedisMode {
+        STANDALONE,
+        SENTINEL,
+        CLUSTER
+    }
+
     @Value("${application.name}")
     private String applicationName;
 
+    @Value("${application.redis.mode:STANDALONE}")
+    private RedisMode mode;
+
     @Value("${spring.redis.host:localhost}")
     private String host;
 
     @Value("${spring.redis.port:6379}")
     private int port;
 
+    @Value("${spring.redis.sentinel.master:mymaster}")
+    private String sentinelMaster;
+
+    @Value("${spring.redis.sentinel.nodes:localhost:26379}")
+    private String[] sentinelNodes;
+
+    @Value("${spring.redis.cluster.nodes:localhost:6379}")
+    private String[] clusterNodes;
+
+    @Value("${application.redis.cluster.refresh.millis:30000}")
+    private long clusterRefreshMillis;
+
+    @Value("${application.redis.lock.pool.max.total:16}")
+    private int lockPoolMaxTotal;
+
+    @Value("${application.redis.lock.pool.max.idle:16}")
+    private int lockPoolMaxIdle;
+
+    @Value("${application.redis.lock.pool.min.idle:4}")
+    private int lockPoolMinIdle;
+
+    @Value("${application.redis.lock.pool.borrow.timeout.millis:100}")
+    private long lockPoolBorrowTimeoutMillis;
+
 
-    //todo example with sentinel connection
     @Bean
-    public JedisConnectionFactory redisConnectionFactory() {
+    @Primary
+    @ConditionalOnExpression(NOT_CLUSTER)
+    public RedisConnectionFactory redisConnectionFactory() {
+        if (mode == RedisMode.SENTINEL) {
+            LOG.info("Redis master '{}' is discovered by sentinels {}", sentinelMaster, Arrays.toString(sentinelNodes));
+            return new JedisConnectionFactory(
+                    new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(Arrays.asList(sentinelNodes))));
+        }
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
         return new JedisConnectionFactory(config);
     }
 
+    /**
+     * In a cluster the primary and the reactive connections are one Lettuce client, which already multiplexes
+     * all commands and keeps the slot table, a second client would only double the connections and topology refreshes.
+     */
+    @Bean(name = {"redisConnectionFactory", "reactiveRedisConnectionFactory"})
+    @Primary
+    @ConditionalOnProperty(name = "application.redis.mode", havingValue = "CLUSTER")
+    public LettuceConnectionFactory sharedClusterConnectionFactory() {
+        LOG.info("Redis cluster is discovered by nodes {}", Arrays.toString(clusterNodes));
+        return clusterConnectionFactory();
+    }
+
+    /**
+     * Separate pool for the lock operations, so other Redis traffic draining the shared pool does not delay locks
+     * and an exhausted lock pool fails fast after the borrow timeout instead of blocking.
+     * In a cluster Lettuce multiplexes all commands over one connection per node, there is no pool to separate,
+     * the locks get a client of their own instead.
+     */
+    @Bean
+    public RedisConnectionFactory lockRedisConnectionFactory(MetricsReporter metricsReporter) {
+        if (mode == RedisMode.CLUSTER) {
+            return clusterConnectionFactory();
+        }
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(lockPoolMaxTotal);
+        poolConfig.setMaxIdle(lockPoolMaxIdle);
+        poolConfig.setMinIdle(lockPoolMinIdle);
+        poolConfig.setMaxWaitMillis(lockPoolBorrowTimeoutMillis);
+        JedisClientConfiguration clientConfiguration = JedisClientConfiguration.builder()
+                .usePooling()
+                .poolConfig(poolConfig)
+                .build();
+        LOG.info("Locks use a separate pool of {} connections", lockPoolMaxTotal);
+        if (mode == RedisMode.SENTINEL) {
+            return new InstrumentedJedisConnectionFactory(
+                    new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(Arrays.asList(sentinelNodes))),
+                    clientConfiguration, metricsReporter, "lockPool", applicationName);
+        }
+        return new InstrumentedJedisConnectionFactory(
+                new RedisStandaloneConfiguration(host, port),
+                clientConfiguration, metricsReporter, "lockPool", applicationName);
+    }
+
+    /**
+     * Multiplexed connection for the non-blocking locks, Jedis has no reactive API.
+     */
+    @Bean
+    @ConditionalOnExpression(NOT_CLUSTER)
+    public LettuceConnectionFactory reactiveRedisConnectionFactory() {
+        if (mode == RedisMode.SENTINEL) {
+            return new LettuceConnectionFactory(
+                    new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(Arrays.asList(sentinelNodes))));
+        }
+        return new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+    }
+
+    /**
+     * Lettuce, as the Jedis cluster connection does not support scripts. Lettuce keeps a copy of the slot table
+     * and sends every command, scripts included, directly to the master owning the slot of its (first) key.
+     * The table is refreshed periodically and right away on MOVED/ASK redirects or reconnects.
+     */
+    private LettuceConnectionFactory clusterConnectionFactory() {
+        ClusterTopologyRefreshOptions topologyRefreshOptions = ClusterTopologyRefreshOptions.builder()
+                .enablePeriodicRefresh(Duration.ofMillis(clusterRefreshMillis))
+                .enableAllAdaptiveRefreshTriggers()
+                .build();
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .clientOptions(ClusterClientOptions.builder().topologyRefreshOptions(topologyRefreshOptions).build())
+                .build();
+        return new LettuceConnectionFactory(new RedisClusterConfiguration(Arrays.asList(clusterNodes)), clientConfiguration);
+    }
+
 
     //todo notice here the name and the type - otherwise see RedisAutoConfiguration
     @Bean
+    @Primary
     public StringRedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory) {
         LOG.info("Application will access Redis using identifier : {}", applicationName);
         StringRedisTemplate redisTemplate = new StringRedisTemplate();
@@ -42,5 +175,23 @@ public class RedisConfig {
         return redisTemplate;
     }
 
+    @Bean
+    public StringRedisTemplate lockRedisTemplate(@Qualifier("lockRedisConnectionFactory") RedisConnectionFactory lockRedisConnectionFactory) {
+        return new StringRedisTemplate(lockRedisConnectionFactory);
+    }
+
+    @Bean
+    public ReactiveStringRedisTemplate reactiveRedisTemplate(
+            @Qualifier("reactiveRedisConnectionFactory") LettuceConnectionFactory reactiveRedisConnectionFactory) {
+        return new ReactiveStringRedisTemplate(reactiveRedisConnectionFactory);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
 
 }
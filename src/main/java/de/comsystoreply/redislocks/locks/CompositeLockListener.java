@@ -0,0 +1,93 @@
+package de.comsystoreply.redislocks.locks;
+
+final class CompositeLockListener implements LockListener {
+    private final LockListener[] listeners;
+
+    CompositeLockListener(LockListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void onAttempt(String lockName, String lockValue, long timestamp) {
+        for (LockListener listener : listeners) {
+            listener.onAttempt(lockName, lockValue, timestamp);
+        }
+    }
+
+    @Override
+    public void onGated(String lockName, String lockValue, long timestamp) {
+        for (LockListener listener : listeners) {
+            listener.onGated(lockName, lockValue, timestamp);
+        }
+    }
+
+    @Override
+    public void onBusy(String lockName, String lockValue, long timestamp) {
+        for (LockListener listener : listeners) {
+            listener.onBusy(lockName, lockValue, timestamp);
+        }
+    }
+
+    @Override
+    public void onAcquired(String lockName, String lockValue, long timestamp, long acquireNanos) {
+        for (LockListener listener : listeners) {
+            listener.onAcquired(lockName, lockValue, timestamp, acquireNanos);
+        }
+    }
+
+    @Override
+    public void onReadAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long readers) {
+        for (LockListener listener : listeners) {
+            listener.onReadAcquired(lockName, lockValue, timestamp, acquireNanos, readers);
+        }
+    }
+
+    @Override
+    public void onPermitAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long permitsInUse, int permits) {
+        for (LockListener listener : listeners) {
+            listener.onPermitAcquired(lockName, lockValue, timestamp, acquireNanos, permitsInUse, permits);
+        }
+    }
+
+    @Override
+    public void onQueued(String lockName, String lockValue, long timestamp, long position) {
+        for (LockListener listener : listeners) {
+            listener.onQueued(lockName, lockValue, timestamp, position);
+        }
+    }
+
+    @Override
+    public void onTurn(String lockName, String lockValue, long timestamp, long waitMillis) {
+        for (LockListener listener : listeners) {
+            listener.onTurn(lockName, lockValue, timestamp, waitMillis);
+        }
+    }
+
+    @Override
+    public void onWaitingForReaders(String lockName, String lockValue, long timestamp, long readers) {
+        for (LockListener listener : listeners) {
+            listener.onWaitingForReaders(lockName, lockValue, timestamp, readers);
+        }
+    }
+
+    @Override
+    public void onReleased(String lockName, String lockValue, long holdNanos, long releaseNanos) {
+        for (LockListener listener : listeners) {
+            listener.onReleased(lockName, lockValue, holdNanos, releaseNanos);
+        }
+    }
+
+    @Override
+    public void onExpired(String lockName, String lockValue, long timestamp, long lockExceedDuration) {
+        for (LockListener listener : listeners) {
+            listener.onExpired(lockName, lockValue, timestamp, lockExceedDuration);
+        }
+    }
+
+    @Override
+    public void onRace(String lockName, String lockValue, String heldLockValue, long timestamp, long lockExceedDuration) {
+        for (LockListener listener : listeners) {
+            listener.onRace(lockName, lockValue, heldLockValue, timestamp, lockExceedDuration);
+        }
+    }
+}
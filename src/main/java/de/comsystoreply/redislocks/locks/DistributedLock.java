@@ -0,0 +1,30 @@
+package de.comsystoreply.redislocks.locks;
+
+import java.time.Duration;
+
+/**
+ * A lock shared by all nodes, which runs an action while holding it.
+ */
+public interface DistributedLock {
+
+    String getLockName();
+
+    /**
+     * Run the runnable within a held lock if possible otherwise returns false.
+     *
+     * @param runnable the action that should be performed
+     * @return true if the action could be performed in the lock. False if no lock could be acquired.
+     */
+    default boolean withLock(Runnable runnable) {
+        return withLock(runnable, Duration.ZERO);
+    }
+
+    /**
+     * Run the runnable within a held lock, waiting up to maxWait for the lock to become free.
+     *
+     * @param runnable the action that should be performed
+     * @param maxWait  how long to wait for a busy lock, zero means fail fast
+     * @return true if the action could be performed in the lock. False if no lock could be acquired in time.
+     */
+    boolean withLock(Runnable runnable, Duration maxWait);
+}
@@ -0,0 +1,197 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Near-cache of locks held by someone else, learned from busy attempts together with the remaining time to live of the lock.
+ * An attempt on a cached lock fails locally without a Redis round trip until the lock expires
+ * or a keyspace notification of its key (del, expired, evicted, ...) arrives, so a free lock is never missed
+ * for longer than the notification takes. A lock is only set again once it is free, which is always notified,
+ * so set events are not needed. The expire event of a renewed lease keeps the entry, the lock is still held
+ * and the cached expiry merely ends early.
+ * <p>
+ * Only the keys matching the key pattern are subscribed to, so nodes do not receive the notifications of unrelated keys,
+ * busy locks outside of it are not cached as their release would never be noticed.
+ * Requires keyspace notifications, which {@link #start()} enables if needed. Without them, and in a Redis Cluster
+ * where every node only notifies about its own keys, the cache stays disabled as it could not learn about releases.
+ */
+public class HeldLockCache implements MessageListener {
+    private static final Logger LOG = LoggerFactory.getLogger(HeldLockCache.class);
+
+    private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+    //K keyspace channel, g generic commands like del and expire, x expired, e evicted
+    private static final String REQUIRED_EVENTS = "Kgxe";
+    private static final String KEYSPACE_CHANNEL_SEPARATOR = "__:";
+    private static final String EXPIRE_EVENT = "expire";
+    //a power of two, several keys sharing a stamp only make a busy attempt skip caching more often
+    private static final int STAMP_STRIPES = 1024;
+
+    private final RedisTemplate<String, String> redis;
+    private final RedisMessageListenerContainer container;
+    private final LongSupplier nanoTimeSupplier;
+    private final int maxSize;
+    private final String keyPattern;
+    private final Pattern keyRegex;
+
+    private final ConcurrentMap<String, Long> expiryNanosByKey = new ConcurrentHashMap<>();
+    //bumped on every notification of a key, a busy attempt overtaken by one must not cache its stale view of the lock
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+    private volatile boolean enabled;
+
+    public HeldLockCache(RedisTemplate<String, String> redis,
+                         RedisMessageListenerContainer container,
+                         LongSupplier nanoTimeSupplier,
+                         int maxSize,
+                         String keyPattern) {
+        this.redis = redis;
+        this.container = container;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.maxSize = maxSize;
+        this.keyPattern = keyPattern;
+        this.keyRegex = Pattern.compile(globToRegex(keyPattern), Pattern.DOTALL);
+    }
+
+    /**
+     * Enables keyspace notifications if needed and subscribes to the ones of the lock keys.
+     */
+    public void start() {
+        if (LockKeys.isCluster(redis)) {
+            LOG.warn("Held lock cache is not supported in a Redis Cluster and stays disabled");
+            return;
+        }
+        try {
+            enableKeyspaceEvents();
+        } catch (DataAccessException e) {
+            LOG.warn("Keyspace notifications could not be enabled, held lock cache stays disabled", e);
+            return;
+        }
+        container.addMessageListener(this, new PatternTopic("__keyspace@*" + KEYSPACE_CHANNEL_SEPARATOR + keyPattern));
+        enabled = true;
+        LOG.info("Held lock cache enabled for keys '{}'", keyPattern);
+    }
+
+    /**
+     * @return the remaining time to live of a lock known to be held, 0 if it is not known to be held
+     */
+    long remainingMillis(String key) {
+        Long expiryNanos = expiryNanosByKey.get(key);
+        if (expiryNanos == null) {
+            return 0;
+        }
+        long remainingNanos = expiryNanos - nanoTimeSupplier.getAsLong();
+        if (remainingNanos <= 0) {
+            expiryNanosByKey.remove(key, expiryNanos);
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+    }
+
+    /**
+     * @return the notifications of the key seen so far, to be passed to {@link #held(String, long, long)} for an attempt started now
+     */
+    long stamp(String key) {
+        return stamps.get(stripe(key));
+    }
+
+    /**
+     * Caches a lock found busy by an attempt. Locks without expiry are not cached, they could stay cached forever
+     * if their release notification got lost, neither are locks whose notifications are not subscribed to.
+     */
+    void held(String key, long lockTtlMillis, long seenStamp) {
+        if (!enabled || lockTtlMillis <= 0 || expiryNanosByKey.size() >= maxSize || !keyRegex.matcher(key).matches()) {
+            return;
+        }
+        expiryNanosByKey.put(key, nanoTimeSupplier.getAsLong() + TimeUnit.MILLISECONDS.toNanos(lockTtlMillis));
+        if (stamp(key) != seenStamp) {
+            //the lock may have been released meanwhile
+            expiryNanosByKey.remove(key);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (EXPIRE_EVENT.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+            return;
+        }
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String key = channel.substring(channel.indexOf(KEYSPACE_CHANNEL_SEPARATOR) + KEYSPACE_CHANNEL_SEPARATOR.length());
+        stamps.incrementAndGet(stripe(key));
+        expiryNanosByKey.remove(key);
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    /**
+     * @return the regular expression of a Redis glob-style pattern as used by PSUBSCRIBE: *, ?, [...] and backslash escapes
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    regex.append(']');
+                } else if (c == '^' && glob.charAt(i - 1) == '[') {
+                    regex.append('^');
+                } else if (c == '-') {
+                    regex.append('-');
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i) {
+                inClass = true;
+                regex.append('[');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    private void enableKeyspaceEvents() {
+        redis.execute((RedisCallback<Void>) connection -> {
+            Properties config = connection.serverCommands().getConfig(NOTIFY_KEYSPACE_EVENTS);
+            String events = config == null ? "" : config.getProperty(NOTIFY_KEYSPACE_EVENTS, "");
+            StringBuilder enabledEvents = new StringBuilder(events);
+            for (char event : REQUIRED_EVENTS.toCharArray()) {
+                //A is the alias for all classes but K and E
+                if (events.indexOf(event) < 0 && (event == 'K' || events.indexOf('A') < 0)) {
+                    enabledEvents.append(event);
+                }
+            }
+            if (enabledEvents.length() != events.length()) {
+                LOG.info("Enabling keyspace notifications '{}'", enabledEvents);
+                connection.serverCommands().setConfig(NOTIFY_KEYSPACE_EVENTS, enabledEvents.toString());
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package de.comsystoreply.redislocks.locks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets only one thread of this JVM per lock key contend for the lock in Redis, the other threads are turned away
+ * or queue in-process. Gates are created on demand and removed as soon as no thread uses them anymore.
+ * A gate is a semaphore rather than an owned lock, so it may be left by another thread than the one that entered it.
+ */
+public class LocalLockGate {
+    private final ConcurrentMap<String, Gate> gates = new ConcurrentHashMap<>();
+
+    boolean tryEnter(String key) {
+        Gate gate = join(key);
+        if (gate.permit.tryAcquire()) {
+            return true;
+        }
+        leave(key);
+        return false;
+    }
+
+    boolean enter(String key, long timeoutNanos) {
+        Gate gate = join(key);
+        boolean entered;
+        try {
+            entered = gate.permit.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            leave(key);
+        }
+        return entered;
+    }
+
+    void exit(String key) {
+        gates.get(key).permit.release();
+        leave(key);
+    }
+
+    private Gate join(String key) {
+        return gates.compute(key, (name, gate) -> {
+            Gate joined = gate == null ? new Gate() : gate;
+            joined.users++;
+            return joined;
+        });
+    }
+
+    private void leave(String key) {
+        gates.computeIfPresent(key, (name, gate) -> --gate.users == 0 ? null : gate);
+    }
+
+    private static final class Gate {
+        private final Semaphore permit = new Semaphore(1);
+        //only accessed within compute of the map
+        private int users;
+    }
+}
@@ -0,0 +1,22 @@
+package de.comsystoreply.redislocks.locks;
+
+final class LockAttemptId {
+    private final String key;
+    private final String value;
+    final long timestamp;
+
+    LockAttemptId(String appName, String lockName, long timestamp) {
+        this.key = lockName;
+        this.timestamp = timestamp;
+        //built once, the value is sent with every command of the attempt and logged at every step
+        this.value = lockName + '_' + appName + '_' + LockTokens.next() + '_' + timestamp;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,51 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Lock names in a Redis Cluster. Only the part of a key within the first pair of braces is hashed,
+ * so locks sharing a hash tag land in the same slot and can be taken together by a single script.
+ */
+public final class LockKeys {
+
+    private LockKeys() {
+    }
+
+    /**
+     * @return a lock name hashed by the group only, e.g. {order:42}:payment
+     */
+    public static String hashTagged(String group, String name) {
+        return "{" + group + "}:" + name;
+    }
+
+    public static int slot(String lockName) {
+        return JedisClusterCRC16.getSlot(lockName);
+    }
+
+    static boolean isCluster(RedisTemplate<String, String> redis) {
+        RedisConnectionFactory connectionFactory = redis.getConnectionFactory();
+        return connectionFactory instanceof LettuceConnectionFactory && ((LettuceConnectionFactory) connectionFactory).isClusterAware()
+                || connectionFactory instanceof JedisConnectionFactory && ((JedisConnectionFactory) connectionFactory).isRedisClusterAware();
+    }
+
+    static void requireSameSlot(Collection<String> lockNames) {
+        Iterator<String> names = lockNames.iterator();
+        String first = names.next();
+        int slot = slot(first);
+        while (names.hasNext()) {
+            String name = names.next();
+            if (slot(name) != slot) {
+                throw new IllegalArgumentException(String.format(
+                        "Locks '%s' and '%s' are in different cluster slots, use a common hash tag like %s",
+                        first, name, hashTagged("group", "name")));
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps locks alive while their critical section is still running.
+ * A single scheduler thread serves all held locks of the JVM, leases due in the same tick are renewed in one pipeline.
+ */
+public class LockLeaseWatchdog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(LockLeaseWatchdog.class);
+
+    private final RedisTemplate<String, String> redis;
+    private final ScheduledExecutorService scheduler;
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+    public LockLeaseWatchdog(RedisTemplate<String, String> redis, long tickMillis) {
+        this.redis = redis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lock-lease-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    Lease hold(String key, String value, long leaseMillis) {
+        Lease lease = new Lease(key, value, leaseMillis, System.nanoTime());
+        leases.add(lease);
+        return lease;
+    }
+
+    void release(Lease lease) {
+        lease.released = true;
+        leases.remove(lease);
+    }
+
+    private void tick() {
+        try {
+            renewDueLeases();
+        } catch (RuntimeException e) {
+            //an exception would cancel the scheduled task for good and with it the renewal of all leases
+            LOG.warn("Renewal of lock leases failed, retrying with the next tick", e);
+        }
+    }
+
+    private void renewDueLeases() {
+        long now = System.nanoTime();
+        List<Lease> dueLeases = new ArrayList<>();
+        for (Lease lease : leases) {
+            if (lease.isDue(now)) {
+                dueLeases.add(lease);
+            }
+        }
+        if (dueLeases.isEmpty()) {
+            return;
+        }
+
+        List<Object> results;
+        try {
+            results = renew(dueLeases);
+        } catch (RuntimeException e) {
+            if (!LockScripts.isNoScriptError(e)) {
+                LOG.warn("Renewal of {} lock leases failed, retrying with the next tick", dueLeases.size(), e);
+                return;
+            }
+            //script cache was flushed (restart or failover), EVALSHA inside a pipeline has no fallback
+            try {
+                LockScripts.load(redis);
+                results = renew(dueLeases);
+            } catch (RuntimeException retryError) {
+                LOG.warn("Renewal of {} lock leases failed after reloading the lock scripts, retrying with the next tick",
+                        dueLeases.size(), retryError);
+                return;
+            }
+        }
+
+        for (int i = 0; i < dueLeases.size(); i++) {
+            Lease lease = dueLeases.get(i);
+            if (Long.valueOf(1L).equals(results.get(i))) {
+                lease.renewedAt = now;
+            } else if (!lease.released) {
+                LOG.warn("LOCK '{}', lease for value '{}' could not be renewed - lock is no longer held",
+                        lease.key, lease.value);
+                leases.remove(lease);
+            }
+        }
+    }
+
+    private List<Object> renew(List<Lease> dueLeases) {
+        List<Object> results = redis.execute((RedisCallback<List<Object>>) connection ->
+                connection.getNativeConnection() instanceof Jedis ? renew((Jedis) connection.getNativeConnection(), dueLeases) : null);
+        if (results != null) {
+            return results;
+        }
+        return redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (Lease lease : dueLeases) {
+                renew(connection, lease);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Spring Data Redis rejects scripts in a pipeline of a Jedis connection, so the pipeline of Jedis itself is used.
+     */
+    private List<Object> renew(Jedis jedis, List<Lease> dueLeases) {
+        RedisSerializer<String> serializer = redis.getStringSerializer();
+        byte[] sha1 = serializer.serialize(LockScripts.RENEW.getSha1());
+        Pipeline pipeline = jedis.pipelined();
+        for (Lease lease : dueLeases) {
+            pipeline.evalsha(
+                    sha1,
+                    1,
+                    serializer.serialize(lease.key),
+                    serializer.serialize(lease.value),
+                    serializer.serialize(String.valueOf(lease.leaseMillis))
+            );
+        }
+        List<Object> results = pipeline.syncAndReturnAll();
+        for (Object result : results) {
+            //errors are returned in place of the replies, NOSCRIPT has to reach the reload
+            if (result instanceof JedisDataException) {
+                throw (JedisDataException) result;
+            }
+        }
+        return results;
+    }
+
+    private void renew(RedisConnection connection, Lease lease) {
+        RedisSerializer<String> serializer = redis.getStringSerializer();
+        connection.evalSha(
+                LockScripts.RENEW.getSha1(),
+                ReturnType.INTEGER,
+                1,
+                serializer.serialize(lease.key),
+                serializer.serialize(lease.value),
+                serializer.serialize(String.valueOf(lease.leaseMillis))
+        );
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    static final class Lease {
+        private final String key;
+        private final String value;
+        private final long leaseMillis;
+        private volatile long renewedAt;
+        private volatile boolean released;
+
+        Lease(String key, String value, long leaseMillis, long renewedAt) {
+            this.key = key;
+            this.value = value;
+            this.leaseMillis = leaseMillis;
+            this.renewedAt = renewedAt;
+        }
+
+        boolean isDue(long now) {
+            //renew after a third of the lease, so a failed renewal still leaves time for another one
+            return now - renewedAt >= TimeUnit.MILLISECONDS.toNanos(leaseMillis) / 3;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package de.comsystoreply.redislocks.locks;
+
+import java.util.Arrays;
+
+/**
+ * Observes the steps of the lock attempts of a {@link RedisLock} and the other lock variants, e.g. to log them or to record metrics.
+ * Listeners are stacked with {@link #compose(LockListener...)}; a lock without listeners uses {@link #NONE},
+ * whose empty methods cost nothing once inlined.
+ * <p>
+ * All methods are called on the thread attempting the lock, so they have to return quickly.
+ * The lock value identifies the attempt, timestamps are wall clock millis and durations nanos unless named otherwise.
+ */
+public interface LockListener {
+
+    LockListener NONE = new LockListener() {
+    };
+
+    static LockListener compose(LockListener... listeners) {
+        LockListener[] active = Arrays.stream(listeners)
+                .filter(listener -> listener != null && listener != NONE)
+                .toArray(LockListener[]::new);
+        if (active.length == 0) {
+            return NONE;
+        }
+        return active.length == 1 ? active[0] : new CompositeLockListener(active);
+    }
+
+    default void onAttempt(String lockName, String lockValue, long timestamp) {
+    }
+
+    /**
+     * Another thread of this application is contending for or holding the lock.
+     */
+    default void onGated(String lockName, String lockValue, long timestamp) {
+    }
+
+    default void onBusy(String lockName, String lockValue, long timestamp) {
+    }
+
+    /**
+     * @param acquireNanos from the start of the attempt until the lock was held
+     */
+    default void onAcquired(String lockName, String lockValue, long timestamp, long acquireNanos) {
+    }
+
+    /**
+     * The shared side of a {@link RedisReadWriteLock} was acquired, called instead of {@link #onAcquired}.
+     *
+     * @param readers the readers holding the lock including this one
+     */
+    default void onReadAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long readers) {
+        onAcquired(lockName, lockValue, timestamp, acquireNanos);
+    }
+
+    /**
+     * A permit of a {@link RedisSemaphore} was acquired, called instead of {@link #onAcquired}.
+     */
+    default void onPermitAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long permitsInUse, int permits) {
+        onAcquired(lockName, lockValue, timestamp, acquireNanos);
+    }
+
+    /**
+     * The attempt lined up in the queue of a {@link RedisFairLock}.
+     */
+    default void onQueued(String lockName, String lockValue, long timestamp, long position) {
+    }
+
+    /**
+     * The queued attempt reached the head of the queue of a {@link RedisFairLock}.
+     */
+    default void onTurn(String lockName, String lockValue, long timestamp, long waitMillis) {
+    }
+
+    /**
+     * A writer of a {@link RedisReadWriteLock} keeps new readers out and waits for the present ones.
+     */
+    default void onWaitingForReaders(String lockName, String lockValue, long timestamp, long readers) {
+    }
+
+    /**
+     * Called when the lock was released again, also if the lock had expired or the action failed.
+     */
+    default void onReleased(String lockName, String lockValue, long holdNanos, long releaseNanos) {
+    }
+
+    /**
+     * The lock expired before it was released, another process could have obtained it meanwhile.
+     */
+    default void onExpired(String lockName, String lockValue, long timestamp, long lockExceedDuration) {
+    }
+
+    /**
+     * The lock was held by another process when it was released.
+     */
+    default void onRace(String lockName, String lockValue, String heldLockValue, long timestamp, long lockExceedDuration) {
+    }
+}
@@ -0,0 +1,163 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Wakes up threads waiting for a lock as soon as the holder publishes the release of it.
+ * One subscription per lock name is shared by all waiters of this JVM.
+ */
+public class LockReleaseSubscriber implements MessageListener {
+    private static final Logger LOG = LoggerFactory.getLogger(LockReleaseSubscriber.class);
+
+    static final String RELEASE_CHANNEL_SUFFIX = ":released";
+
+    private final RedisMessageListenerContainer container;
+    private final ConcurrentMap<String, ReleaseSignal> signals = new ConcurrentHashMap<>();
+    //turns of queued waiters by waiter token, see RedisFairLock
+    private final ConcurrentMap<String, Semaphore> turns = new ConcurrentHashMap<>();
+
+    public LockReleaseSubscriber(RedisMessageListenerContainer container) {
+        this.container = container;
+    }
+
+    static String releaseChannel(String lockName) {
+        return lockName + RELEASE_CHANNEL_SUFFIX;
+    }
+
+    ReleaseSignal signalFor(String lockName) {
+        ReleaseSignal signal = signals.get(lockName);
+        if (signal != null) {
+            return signal;
+        }
+        ReleaseSignal newSignal = new ReleaseSignal();
+        signal = signals.putIfAbsent(lockName, newSignal);
+        if (signal != null) {
+            return signal;
+        }
+        LOG.info("LOCK '{}', subscribing to release channel '{}'", lockName, releaseChannel(lockName));
+        container.addMessageListener(this, new ChannelTopic(releaseChannel(lockName)));
+        return newSignal;
+    }
+
+    /**
+     * Retries tryAcquire until it succeeds or the deadline passed, sleeping until the next release of the lock in between.
+     * Expired holders are not announced, so a sleep never lasts longer than maxSleepMillis, usually the lock expiry.
+     *
+     * @return true if tryAcquire succeeded, false on timeout or interrupt
+     */
+    boolean awaitAcquire(String lockName, BooleanSupplier tryAcquire, long deadlineNanos, LongSupplier nanoTimeSupplier, long maxSleepMillis) {
+        ReleaseSignal releaseSignal = signalFor(lockName);
+        long generation = releaseSignal.generation();
+        while (!tryAcquire.getAsBoolean()) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - nanoTimeSupplier.getAsLong());
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            try {
+                releaseSignal.await(generation, Math.min(remainingMillis, maxSleepMillis));
+            } catch (InterruptedException e) {
+                LOG.warn("Thread interrupted");
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            generation = releaseSignal.generation();
+        }
+        return true;
+    }
+
+    /**
+     * Registers a queued waiter. Its turn is signalled when a release of the lock is published with the waiter token
+     * as message, only this waiter wakes up while the others in the queue keep sleeping.
+     */
+    Semaphore registerTurn(String lockName, String waiterToken) {
+        signalFor(lockName);
+        Semaphore turn = new Semaphore(0);
+        turns.put(waiterToken, turn);
+        return turn;
+    }
+
+    void unregisterTurn(String waiterToken) {
+        turns.remove(waiterToken);
+    }
+
+    /**
+     * Drops the subscription of a lock nobody waits for in this JVM, so subscriptions do not grow with the amount of lock names.
+     * A waiter that obtained the signal just before it was dropped is not woken up, its wait is still bounded by the lock expiry.
+     */
+    void unsubscribeIfIdle(String lockName) {
+        ReleaseSignal signal = signals.get(lockName);
+        if (signal == null || !signal.isIdle() || !signals.remove(lockName, signal)) {
+            return;
+        }
+        container.removeMessageListener(this, new ChannelTopic(releaseChannel(lockName)));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (!channel.endsWith(RELEASE_CHANNEL_SUFFIX)) {
+            return;
+        }
+        ReleaseSignal signal = signals.get(channel.substring(0, channel.length() - RELEASE_CHANNEL_SUFFIX.length()));
+        if (signal != null) {
+            signal.fire();
+        }
+        if (!turns.isEmpty()) {
+            Semaphore turn = turns.get(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (turn != null) {
+                turn.release();
+            }
+        }
+    }
+
+    /**
+     * Generation counter bumped on every release. Waiters remember the generation before their acquire attempt,
+     * so a release happening between a failed attempt and the wait is never lost.
+     */
+    static final class ReleaseSignal {
+        private long generation;
+        private int waiters;
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void fire() {
+            generation++;
+            notifyAll();
+        }
+
+        synchronized boolean isIdle() {
+            return waiters == 0;
+        }
+
+        synchronized void await(long seenGeneration, long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            waiters++;
+            try {
+                while (generation == seenGeneration) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } finally {
+                waiters--;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.comsystoreply.redislocks.locks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Schedules the retries of a busy lock, see {@link RedisLock#withLock(Runnable, java.time.Duration, LockRetryPolicy)}.
+ * Unlike waiting for release notifications no subscription is needed and contenders do not all retry on the same release.
+ */
+@FunctionalInterface
+public interface LockRetryPolicy {
+
+    enum Type {
+        FIXED,
+        EXPONENTIAL,
+        DECORRELATED_JITTER,
+        LOCK_TTL
+    }
+
+    /**
+     * @param attempt             the number of failed attempts so far, starting with 1
+     * @param previousDelayMillis the delay before the failed attempt, 0 for the first attempt
+     * @param lockTtlMillis       the remaining time to live of the lock as reported by the failed attempt, -1 if it has none
+     * @return how long to wait before the next attempt
+     */
+    long nextDelayMillis(int attempt, long previousDelayMillis, long lockTtlMillis);
+
+    static LockRetryPolicy of(Type type, long baseMillis, long maxMillis) {
+        if (baseMillis < 0 || baseMillis > maxMillis) {
+            throw new IllegalArgumentException(String.format("Retry base must be between 0 and max %d ms, got: %d", maxMillis, baseMillis));
+        }
+        switch (type) {
+            case FIXED:
+                return fixed(baseMillis);
+            case EXPONENTIAL:
+                return exponential(baseMillis, maxMillis);
+            case DECORRELATED_JITTER:
+                return decorrelatedJitter(baseMillis, maxMillis);
+            case LOCK_TTL:
+                return lockTtl(baseMillis, maxMillis);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown retry policy: %s", type));
+        }
+    }
+
+    static LockRetryPolicy fixed(long delayMillis) {
+        return (attempt, previousDelayMillis, lockTtlMillis) -> delayMillis;
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between baseMillis and baseMillis * 2^attempt, capped at maxMillis.
+     * The floor keeps a contender from retrying right away, which full jitter down to 0 would allow on every attempt.
+     */
+    static LockRetryPolicy exponential(long baseMillis, long maxMillis) {
+        return (attempt, previousDelayMillis, lockTtlMillis) -> {
+            long ceiling = attempt >= 31 ? maxMillis : Math.min(maxMillis, baseMillis * (1L << attempt));
+            return baseMillis + ThreadLocalRandom.current().nextLong(ceiling - baseMillis + 1);
+        };
+    }
+
+    /**
+     * Decorrelated jitter: a random delay between baseMillis and three times the previous delay, capped at maxMillis.
+     */
+    static LockRetryPolicy decorrelatedJitter(long baseMillis, long maxMillis) {
+        return (attempt, previousDelayMillis, lockTtlMillis) -> {
+            long ceiling = Math.max(baseMillis, previousDelayMillis * 3);
+            return Math.min(maxMillis, ThreadLocalRandom.current().nextLong(baseMillis, ceiling + 1));
+        };
+    }
+
+    /**
+     * Retries when the lock expires at the latest, spread by a random jitter up to jitterMillis,
+     * so the contenders do not all hit Redis in the same millisecond. A lock without expiry is retried after maxMillis.
+     * Suits holders that mostly run until their lock expires, an earlier release is only noticed at the next retry.
+     */
+    static LockRetryPolicy lockTtl(long jitterMillis, long maxMillis) {
+        return (attempt, previousDelayMillis, lockTtlMillis) -> lockTtlMillis < 0
+                ? maxMillis
+                : Math.min(maxMillis, lockTtlMillis + ThreadLocalRandom.current().nextLong(jitterMillis + 1));
+    }
+}
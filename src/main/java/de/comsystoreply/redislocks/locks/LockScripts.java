@@ -0,0 +1,319 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lua scripts used by the locks. Each script is created once, so its SHA1 digest is computed once and
+ * {@link RedisTemplate#execute(RedisScript, List, Object...)} sends only EVALSHA, falling back to EVAL on NOSCRIPT.
+ */
+public final class LockScripts {
+    private static final Logger LOG = LoggerFactory.getLogger(LockScripts.class);
+
+    //        Redis uses the same Lua interpreter to run all the commands.
+    //        Also Redis guarantees that a script is executed in an atomic way:
+    //        no other script or Redis command will be executed while a script is being executed.
+    //        This semantic is similar to the one of MULTI / EXEC.
+    //        From the point of view of all the other clients the effects of a script are either still not visible or already completed.
+    //        If a key with expiry (ttl) exists at the start of eval, it will not get expired during the evaluation of a script.
+    //        A successful release is published on the release channel of the lock, so waiting nodes can retry right away.
+    static final RedisScript<String> DELETE = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) " +
+                    "if current == ARGV[1] then " +
+                    "   redis.call(\"del\", KEYS[1]) " +
+                    "   redis.call(\"publish\", ARGV[2], ARGV[1]) " +
+                    "   return ARGV[1] " +
+                    "else " +
+                    "   return current " +
+                    "end ",
+            String.class
+    );
+
+    //    SET NX PX combined with PTTL, so a busy attempt learns when the lock expires without another round trip.
+    //    Returns 0 when the lock was set, otherwise the remaining time to live of the lock (at least 1), -1 if it has none.
+    static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "   return 0 " +
+                    "end " +
+                    "local ttl = redis.call('PTTL', KEYS[1]) " +
+                    "if ttl == -1 then " +
+                    "   return -1 " +
+                    "end " +
+                    "return math.max(ttl, 1) ",
+            Long.class
+    );
+
+    static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "   return redis.call(\"pexpire\", KEYS[1], ARGV[2]) " +
+                    "else " +
+                    "   return 0 " +
+                    "end ",
+            Long.class
+    );
+
+    //    Returns 0 when all keys were set, otherwise the (1-based) index of the first busy key; nothing is set then.
+    static final RedisScript<Long> MULTI_ACQUIRE = new DefaultRedisScript<>(
+            "for i = 1, #KEYS do " +
+                    "   if redis.call('EXISTS', KEYS[i]) == 1 then " +
+                    "      return i " +
+                    "   end " +
+                    "end " +
+                    "for i = 1, #KEYS do " +
+                    "   redis.call(\"set\", KEYS[i], ARGV[1], \"PX\", ARGV[2]) " +
+                    "end " +
+                    "return 0 ",
+            Long.class
+    );
+
+    //    Owner-checked release of several keys, each released key is published like in DELETE.
+    //    Returns the keys that were not released because they expired or were taken over by another owner, they are left untouched.
+    @SuppressWarnings("unchecked")
+    static final RedisScript<List<String>> MULTI_DELETE = new DefaultRedisScript<>(
+            "local lost = {} " +
+                    "for i = 1, #KEYS do " +
+                    "   if redis.call('GET', KEYS[i]) == ARGV[1] then " +
+                    "      redis.call(\"del\", KEYS[i]) " +
+                    "      redis.call(\"publish\", KEYS[i] .. ARGV[2], ARGV[1]) " +
+                    "   else " +
+                    "      lost[#lost + 1] = KEYS[i] " +
+                    "   end " +
+                    "end " +
+                    "return lost ",
+            (Class<List<String>>) (Class<?>) List.class
+    );
+
+    //    Claims independent keys: sets each free key like ACQUIRE until ARGV[3] keys were claimed, busy keys are skipped.
+    //    Returns the claimed keys.
+    @SuppressWarnings("unchecked")
+    static final RedisScript<List<String>> CLAIM = new DefaultRedisScript<>(
+            "local claimed = {} " +
+                    "local max = tonumber(ARGV[3]) " +
+                    "for i = 1, #KEYS do " +
+                    "   if #claimed >= max then " +
+                    "      break " +
+                    "   end " +
+                    "   if redis.call('SET', KEYS[i], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "      claimed[#claimed + 1] = KEYS[i] " +
+                    "   end " +
+                    "end " +
+                    "return claimed ",
+            (Class<List<String>>) (Class<?>) List.class
+    );
+
+    //    Read-write lock keys: KEYS[1] the writer, KEYS[2] the hash of reader tokens to their expiry (Redis time in millis),
+    //    KEYS[3] the marker of a writer waiting for the readers to drain, which keeps new readers out.
+    //    Expired readers are pruned first; TIME requires replicating the effects instead of the script.
+    private static final String PRUNE_EXPIRED_READERS =
+            "redis.replicate_commands() " +
+                    "local time = redis.call('TIME') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "local readers = redis.call('HGETALL', KEYS[2]) " +
+                    "for i = 1, #readers, 2 do " +
+                    "   if tonumber(readers[i + 1]) <= now then " +
+                    "      redis.call(\"hdel\", KEYS[2], readers[i]) " +
+                    "   end " +
+                    "end ";
+
+    //    Returns the amount of readers including this one, 0 if a writer holds the lock or waits for it.
+    static final RedisScript<Long> READ_ACQUIRE = new DefaultRedisScript<>(
+            PRUNE_EXPIRED_READERS +
+                    "if redis.call('EXISTS', KEYS[1]) == 1 or redis.call('EXISTS', KEYS[3]) == 1 then " +
+                    "   return 0 " +
+                    "end " +
+                    "redis.call(\"hset\", KEYS[2], ARGV[1], now + tonumber(ARGV[2])) " +
+                    "if redis.call('PTTL', KEYS[2]) < tonumber(ARGV[2]) then " +
+                    "   redis.call(\"pexpire\", KEYS[2], ARGV[2]) " +
+                    "end " +
+                    "return redis.call('HLEN', KEYS[2]) ",
+            Long.class
+    );
+
+    //    Returns 0 when the write lock was set, -1 if another writer holds it,
+    //    otherwise the amount of readers still holding the lock; the waiting marker is set then.
+    static final RedisScript<Long> WRITE_ACQUIRE = new DefaultRedisScript<>(
+            PRUNE_EXPIRED_READERS +
+                    "if redis.call('EXISTS', KEYS[1]) == 1 then " +
+                    "   return -1 " +
+                    "end " +
+                    "local waiting = redis.call('GET', KEYS[3]) " +
+                    "local readerCount = redis.call('HLEN', KEYS[2]) " +
+                    "if readerCount > 0 then " +
+                    "   if not waiting or waiting == ARGV[1] then " +
+                    "      redis.call(\"set\", KEYS[3], ARGV[1], \"PX\", ARGV[2]) " +
+                    "   end " +
+                    "   return readerCount " +
+                    "end " +
+                    "redis.call(\"set\", KEYS[1], ARGV[1], \"PX\", ARGV[2]) " +
+                    "if waiting == ARGV[1] then " +
+                    "   redis.call(\"del\", KEYS[3]) " +
+                    "end " +
+                    "return 0 ",
+            Long.class
+    );
+
+    //    Owner-checked release of a reader, the last reader publishes the release for waiting writers.
+    //    Returns 1 if the reader still held the lock, 0 if its token expired, even if it was not pruned yet.
+    static final RedisScript<Long> READ_DELETE = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local time = redis.call('TIME') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "local expiry = redis.call('HGET', KEYS[1], ARGV[1]) " +
+                    "redis.call(\"hdel\", KEYS[1], ARGV[1]) " +
+                    "if redis.call('HLEN', KEYS[1]) == 0 then " +
+                    "   redis.call(\"publish\", ARGV[2], ARGV[1]) " +
+                    "end " +
+                    "if expiry and tonumber(expiry) > now then " +
+                    "   return 1 " +
+                    "end " +
+                    "return 0 ",
+            Long.class
+    );
+
+    //    Semaphore: KEYS[1] is a sorted set of lease tokens scored by their expiry (Redis time in millis).
+    //    Expired leases are removed before every acquire and release, freed permits are published.
+    private static final String PRUNE_EXPIRED_LEASES =
+            "redis.replicate_commands() " +
+                    "local time = redis.call('TIME') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "local expired = redis.call(\"zremrangebyscore\", KEYS[1], '-inf', now) ";
+
+    //    Returns the amount of permits in use including the acquired one, 0 if all ARGV[3] permits are in use.
+    static final RedisScript<Long> SEMAPHORE_ACQUIRE = new DefaultRedisScript<>(
+            PRUNE_EXPIRED_LEASES +
+                    "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[3]) then " +
+                    "   return 0 " +
+                    "end " +
+                    "redis.call(\"zadd\", KEYS[1], now + tonumber(ARGV[2]), ARGV[1]) " +
+                    "if redis.call('PTTL', KEYS[1]) < tonumber(ARGV[2]) then " +
+                    "   redis.call(\"pexpire\", KEYS[1], ARGV[2]) " +
+                    "end " +
+                    "return redis.call('ZCARD', KEYS[1]) ",
+            Long.class
+    );
+
+    //    Returns 1 if the lease was still held, 0 if it expired.
+    static final RedisScript<Long> SEMAPHORE_RELEASE = new DefaultRedisScript<>(
+            PRUNE_EXPIRED_LEASES +
+                    "local released = redis.call(\"zrem\", KEYS[1], ARGV[1]) " +
+                    "if released + expired > 0 then " +
+                    "   redis.call(\"publish\", ARGV[2], ARGV[1]) " +
+                    "end " +
+                    "return released ",
+            Long.class
+    );
+
+    //    Fair lock keys: KEYS[1] the owner, KEYS[2] the FIFO list of waiter tokens,
+    //    KEYS[3] a sorted set of the waiter tokens scored by the expiry of their place in the queue (Redis time in millis).
+    //    Waiters whose place expired are dropped from the head, then the lock goes to the head of the queue only.
+    //    Returns 0 when the lock was set, -1 if busy and ARGV[4] is not '1',
+    //    otherwise the (1-based) position of the waiter in the queue, which it joined or whose place it renewed for ARGV[3] ms.
+    static final RedisScript<Long> FAIR_ACQUIRE = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local time = redis.call('TIME') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "while true do " +
+                    "   local head = redis.call('LINDEX', KEYS[2], 0) " +
+                    "   if not head then break end " +
+                    "   local timeout = redis.call('ZSCORE', KEYS[3], head) " +
+                    "   if timeout and tonumber(timeout) > now then break end " +
+                    "   redis.call(\"lpop\", KEYS[2]) " +
+                    "   redis.call(\"zrem\", KEYS[3], head) " +
+                    "end " +
+                    "local head = redis.call('LINDEX', KEYS[2], 0) " +
+                    "if redis.call('EXISTS', KEYS[1]) == 0 and (not head or head == ARGV[1]) then " +
+                    "   if head then " +
+                    "      redis.call(\"lpop\", KEYS[2]) " +
+                    "      redis.call(\"zrem\", KEYS[3], ARGV[1]) " +
+                    "   end " +
+                    "   redis.call(\"set\", KEYS[1], ARGV[1], \"PX\", ARGV[2]) " +
+                    "   return 0 " +
+                    "end " +
+                    "if ARGV[4] ~= '1' then " +
+                    "   return -1 " +
+                    "end " +
+                    "if not redis.call('ZSCORE', KEYS[3], ARGV[1]) then " +
+                    "   redis.call(\"rpush\", KEYS[2], ARGV[1]) " +
+                    "end " +
+                    "redis.call(\"zadd\", KEYS[3], now + tonumber(ARGV[3]), ARGV[1]) " +
+                    "redis.call(\"pexpire\", KEYS[2], ARGV[3]) " +
+                    "redis.call(\"pexpire\", KEYS[3], ARGV[3]) " +
+                    "local queue = redis.call('LRANGE', KEYS[2], 0, -1) " +
+                    "for i = 1, #queue do " +
+                    "   if queue[i] == ARGV[1] then " +
+                    "      return i " +
+                    "   end " +
+                    "end " +
+                    "return #queue ",
+            Long.class
+    );
+
+    //    Owner-checked release like DELETE, but the published message is the token of the head of the queue,
+    //    so only that waiter wakes up.
+    static final RedisScript<String> FAIR_DELETE = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) " +
+                    "if current == ARGV[1] then " +
+                    "   redis.call(\"del\", KEYS[1]) " +
+                    "   local head = redis.call('LINDEX', KEYS[2], 0) " +
+                    "   if head then " +
+                    "      redis.call(\"publish\", ARGV[2], head) " +
+                    "   end " +
+                    "   return ARGV[1] " +
+                    "else " +
+                    "   return current " +
+                    "end ",
+            String.class
+    );
+
+    //    A waiter leaving the queue; if it was the head of a free lock the next waiter gets its turn.
+    static final RedisScript<Long> FAIR_DEQUEUE = new DefaultRedisScript<>(
+            "local head = redis.call('LINDEX', KEYS[2], 0) " +
+                    "local removed = redis.call(\"lrem\", KEYS[2], 1, ARGV[1]) " +
+                    "redis.call(\"zrem\", KEYS[3], ARGV[1]) " +
+                    "if head == ARGV[1] and redis.call('EXISTS', KEYS[1]) == 0 then " +
+                    "   local next = redis.call('LINDEX', KEYS[2], 0) " +
+                    "   if next then " +
+                    "      redis.call(\"publish\", ARGV[2], next) " +
+                    "   end " +
+                    "end " +
+                    "return removed ",
+            Long.class
+    );
+
+    private static final List<RedisScript<?>> ALL = Arrays.asList(
+            DELETE, ACQUIRE, RENEW, MULTI_ACQUIRE, MULTI_DELETE, CLAIM, READ_ACQUIRE, WRITE_ACQUIRE, READ_DELETE,
+            SEMAPHORE_ACQUIRE, SEMAPHORE_RELEASE, FAIR_ACQUIRE, FAIR_DELETE, FAIR_DEQUEUE);
+
+    private LockScripts() {
+    }
+
+    /**
+     * Loads all lock scripts into the script cache of Redis, so the first EVALSHA of every script already hits.
+     */
+    public static void load(RedisTemplate<String, String> redis) {
+        redis.execute((RedisCallback<Void>) connection -> {
+            for (RedisScript<?> script : ALL) {
+                String sha1 = connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                LOG.info("Lock script loaded with sha1 {}", sha1);
+            }
+            return null;
+        });
+    }
+
+    static boolean isNoScriptError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,20 @@
+package de.comsystoreply.redislocks.locks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates lock tokens that are unique per process without touching {@link SecureRandom} for every attempt:
+ * a random process prefix is drawn once and followed by a sequence number.
+ */
+final class LockTokens {
+    private static final String PROCESS_PREFIX = String.format("%016x", new SecureRandom().nextLong());
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private LockTokens() {
+    }
+
+    static String next() {
+        return PROCESS_PREFIX + '-' + Long.toHexString(SEQUENCE.incrementAndGet());
+    }
+}
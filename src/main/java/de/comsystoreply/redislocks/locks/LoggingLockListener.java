@@ -0,0 +1,82 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs every step of a lock attempt. The steps of a successful attempt are logged at INFO and checked for the level first,
+ * so no argument array is allocated while INFO is off. Expired locks and races are always logged as WARN.
+ */
+public class LoggingLockListener implements LockListener {
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingLockListener.class);
+
+    @Override
+    public void onAttempt(String lockName, String lockValue, long timestamp) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("LOCK '{}', an attempt to obtain with value '{}'", lockName, lockValue);
+        }
+    }
+
+    @Override
+    public void onGated(String lockName, String lockValue, long timestamp) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("LOCK '{}', an attempt to obtain with value '{}' waits for another thread of this application", lockName, lockValue);
+        }
+    }
+
+    @Override
+    public void onBusy(String lockName, String lockValue, long timestamp) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("LOCK '{}', an attempt to obtain with value '{}' FAILED - lock busy", lockName, lockValue);
+        }
+    }
+
+    @Override
+    public void onAcquired(String lockName, String lockValue, long timestamp, long acquireNanos) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("LOCK '{}', an attempt to obtain with value '{}' SUCCESS", lockName, lockValue);
+        }
+    }
+
+    @Override
+    public void onReadAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long readers) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("READ LOCK '{}', an attempt to obtain with value '{}' SUCCESS - {} readers", lockName, lockValue, readers);
+        }
+    }
+
+    @Override
+    public void onPermitAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long permitsInUse, int permits) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("SEMAPHORE '{}', an attempt to obtain a permit with value '{}' SUCCESS - {} of {} permits in use",
+                    lockName, lockValue, permitsInUse, permits);
+        }
+    }
+
+    @Override
+    public void onQueued(String lockName, String lockValue, long timestamp, long position) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("FAIR LOCK '{}', an attempt to obtain with value '{}' queued at position {}", lockName, lockValue, position);
+        }
+    }
+
+    @Override
+    public void onWaitingForReaders(String lockName, String lockValue, long timestamp, long readers) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("WRITE LOCK '{}', an attempt to obtain with value '{}' waits for {} readers", lockName, lockValue, readers);
+        }
+    }
+
+    @Override
+    public void onExpired(String lockName, String lockValue, long timestamp, long lockExceedDuration) {
+        //another process could have obtained the lock and finished his process before
+        LOG.warn("LOCK '{}', execution for value '{}' was finished after lock expired - possible race condition detected",
+                lockName, lockValue);
+    }
+
+    @Override
+    public void onRace(String lockName, String lockValue, String heldLockValue, long timestamp, long lockExceedDuration) {
+        LOG.warn("LOCK '{}', execution for value '{}' was finished after another process obtained the lock with value '{}' - race condition detected",
+                lockName, lockValue, heldLockValue);
+    }
+}
@@ -0,0 +1,82 @@
+package de.comsystoreply.redislocks.locks;
+
+import de.comsystoreply.redislocks.LockEventType;
+import de.comsystoreply.redislocks.LockLatencyType;
+import de.comsystoreply.redislocks.MetricsReporter;
+
+/**
+ * Records the lock events and the acquire, hold and release latencies with the {@link MetricsReporter}.
+ */
+public class MetricsLockListener implements LockListener {
+    private final MetricsReporter metricsReporter;
+    private final String appName;
+
+    public MetricsLockListener(MetricsReporter metricsReporter, String appName) {
+        this.metricsReporter = metricsReporter;
+        this.appName = appName;
+    }
+
+    @Override
+    public void onAttempt(String lockName, String lockValue, long timestamp) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_ATTEMPT, timestamp, lockName, appName, lockValue, 0);
+    }
+
+    @Override
+    public void onGated(String lockName, String lockValue, long timestamp) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_GATED, timestamp, lockName, appName, lockValue, 0);
+    }
+
+    @Override
+    public void onBusy(String lockName, String lockValue, long timestamp) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_BUSY, timestamp, lockName, appName, lockValue, 0);
+    }
+
+    @Override
+    public void onAcquired(String lockName, String lockValue, long timestamp, long acquireNanos) {
+        metricsReporter.recordLockLatency(LockLatencyType.ACQUIRE, lockName, appName, acquireNanos);
+        metricsReporter.recordLockEvent(LockEventType.LOCK_SUCCESS, timestamp, lockName, appName, lockValue, 0);
+    }
+
+    @Override
+    public void onReadAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long readers) {
+        metricsReporter.recordLockLatency(LockLatencyType.ACQUIRE, lockName, appName, acquireNanos);
+        metricsReporter.recordLockEvent(LockEventType.READ_LOCK_SUCCESS, timestamp, lockName, appName, lockValue, readers);
+    }
+
+    @Override
+    public void onPermitAcquired(String lockName, String lockValue, long timestamp, long acquireNanos, long permitsInUse, int permits) {
+        metricsReporter.recordLockLatency(LockLatencyType.ACQUIRE, lockName, appName, acquireNanos);
+        metricsReporter.recordLockEvent(LockEventType.PERMIT_SUCCESS, timestamp, lockName, appName, lockValue, permitsInUse);
+    }
+
+    @Override
+    public void onQueued(String lockName, String lockValue, long timestamp, long position) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_QUEUED, timestamp, lockName, appName, lockValue, position);
+    }
+
+    @Override
+    public void onTurn(String lockName, String lockValue, long timestamp, long waitMillis) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_QUEUE_WAIT, timestamp, lockName, appName, lockValue, waitMillis);
+    }
+
+    @Override
+    public void onWaitingForReaders(String lockName, String lockValue, long timestamp, long readers) {
+        metricsReporter.recordLockEvent(LockEventType.WRITE_LOCK_WAITING, timestamp, lockName, appName, lockValue, readers);
+    }
+
+    @Override
+    public void onReleased(String lockName, String lockValue, long holdNanos, long releaseNanos) {
+        metricsReporter.recordLockLatency(LockLatencyType.HOLD, lockName, appName, holdNanos);
+        metricsReporter.recordLockLatency(LockLatencyType.RELEASE, lockName, appName, releaseNanos);
+    }
+
+    @Override
+    public void onExpired(String lockName, String lockValue, long timestamp, long lockExceedDuration) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_EXPIRED, timestamp, lockName, appName, lockValue, lockExceedDuration);
+    }
+
+    @Override
+    public void onRace(String lockName, String lockValue, String heldLockValue, long timestamp, long lockExceedDuration) {
+        metricsReporter.recordLockEvent(LockEventType.LOCK_RACE, timestamp, lockName, appName, lockValue, lockExceedDuration);
+    }
+}
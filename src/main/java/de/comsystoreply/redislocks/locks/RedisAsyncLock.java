@@ -0,0 +1,129 @@
+package de.comsystoreply.redislocks.locks;
+
+import de.comsystoreply.redislocks.LockEventType;
+import de.comsystoreply.redislocks.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking counterpart of {@link RedisLock} on a multiplexed Lettuce connection: no thread waits for Redis
+ * or for the action, so many lock operations in flight share a few connections and event loop threads.
+ */
+public class RedisAsyncLock {
+    private static final Logger LOG = LoggerFactory.getLogger(RedisAsyncLock.class);
+
+    private final ReactiveRedisTemplate<String, String> redis;
+    private final MetricsReporter metricsReporter;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long lockExpiryMillis;
+    private final String lockName;
+    private final String appName;
+
+    public RedisAsyncLock(ReactiveRedisTemplate<String, String> redis,
+                          MetricsReporter metricsReporter,
+                          LongSupplier currentTimeSupplier,
+                          LongSupplier nanoTimeSupplier,
+                          long lockExpiryMillis,
+                          String lockName,
+                          String appName) {
+        this.redis = redis;
+        this.metricsReporter = metricsReporter;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.lockExpiryMillis = lockExpiryMillis;
+        this.lockName = lockName;
+        this.appName = appName;
+    }
+
+    /**
+     * Run the action within a held lock if possible. The lock is released once the stage returned by the action completes.
+     *
+     * @param action the action that should be performed, only called if the lock could be acquired
+     * @return the result of the action. Empty if no lock could be acquired (or the action completed with null).
+     */
+    public <T> CompletionStage<Optional<T>> withLockAsync(Supplier<? extends CompletionStage<T>> action) {
+        return withLockReactive(() -> Mono.fromCompletionStage(action.get()))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    /**
+     * Run the action within a held lock if possible. The lock is released once the action completes, fails or is cancelled.
+     *
+     * @param action the action that should be performed, only subscribed to if the lock could be acquired
+     * @return the result of the action. Empty if no lock could be acquired.
+     */
+    public <T> Mono<T> withLockReactive(Supplier<? extends Mono<T>> action) {
+        return Mono.defer(() -> {
+            LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
+            return Mono.usingWhen(
+                    tryLock(lockAttemptId),
+                    acquiredNanos -> action.get(),
+                    acquiredNanos -> release(lockAttemptId, acquiredNanos),
+                    acquiredNanos -> release(lockAttemptId, acquiredNanos),
+                    acquiredNanos -> release(lockAttemptId, acquiredNanos)
+            );
+        });
+    }
+
+    /**
+     * @return the time the lock was acquired at or empty if the lock is busy
+     */
+    private Mono<Long> tryLock(LockAttemptId lockAttemptId) {
+        notifyLockEvent(LockEventType.LOCK_ATTEMPT, lockAttemptId, lockAttemptId.timestamp, 0);
+        return redis.opsForValue()
+                .setIfAbsent(lockAttemptId.getKey(), lockAttemptId.getValue(), Duration.ofMillis(lockExpiryMillis))
+                .flatMap(lockFree -> {
+                    if (!lockFree) {
+                        LOG.info("LOCK '{}', an attempt to obtain with value '{}' FAILED - lock busy", lockAttemptId.getKey(), lockAttemptId.getValue());
+                        notifyLockEvent(LockEventType.LOCK_BUSY, lockAttemptId, lockAttemptId.timestamp, 0);
+                        return Mono.empty();
+                    }
+                    LOG.info("LOCK '{}', an attempt to obtain with value '{}' SUCCESS", lockAttemptId.getKey(), lockAttemptId.getValue());
+                    notifyLockEvent(LockEventType.LOCK_SUCCESS, lockAttemptId, lockAttemptId.timestamp, 0);
+                    return Mono.just(nanoTimeSupplier.getAsLong());
+                });
+    }
+
+    private Mono<String> release(LockAttemptId lockAttemptId, long acquiredNanos) {
+        return redis.execute(
+                LockScripts.DELETE,
+                Collections.singletonList(lockAttemptId.getKey()),
+                Arrays.asList(lockAttemptId.getValue(), LockReleaseSubscriber.releaseChannel(lockAttemptId.getKey()))
+        )
+                .next()
+                .defaultIfEmpty("")
+                .doOnNext(heldLockValue -> {
+                    if (heldLockValue.equals(lockAttemptId.getValue())) {
+                        return;
+                    }
+                    long lockExceedDuration = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos) - lockExpiryMillis;
+                    if (heldLockValue.isEmpty()) {
+                        LOG.warn("LOCK '{}', execution for value '{}' was finished after lock expired - possible race condition detected",
+                                lockAttemptId.getKey(), lockAttemptId.getValue());
+                        notifyLockEvent(LockEventType.LOCK_EXPIRED, lockAttemptId, currentTimeSupplier.getAsLong(), lockExceedDuration);
+                    } else {
+                        LOG.warn("LOCK '{}', execution for value '{}' was finished after another process obtained the lock with value '{}' - race condition detected",
+                                lockAttemptId.getKey(), lockAttemptId.getValue(), heldLockValue);
+                        notifyLockEvent(LockEventType.LOCK_RACE, lockAttemptId, currentTimeSupplier.getAsLong(), lockExceedDuration);
+                    }
+                });
+    }
+
+    private void notifyLockEvent(LockEventType type, LockAttemptId lockAttemptId, long timestamp, long value) {
+        metricsReporter.recordLockEvent(type, timestamp, lockAttemptId.getKey(), appName, lockAttemptId.getValue(), value);
+    }
+}
@@ -0,0 +1,174 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * First come, first served lock: waiters line up in a queue in Redis and the lock is only handed to the head of it.
+ * A release wakes up the head waiter only instead of every waiter retrying at once, and no node can be overtaken
+ * by one that retries faster. Attempts without max wait never jump the queue, they fail while anyone is waiting.
+ * <p>
+ * Every waiter leases its place in the queue and renews it whenever it retries, a crashed waiter is dropped from the
+ * queue once its lease expired. All keys share the hash tag of the lock name, so the lock also works in a Redis Cluster.
+ */
+public class RedisFairLock implements DistributedLock {
+    private static final Logger LOG = LoggerFactory.getLogger(RedisFairLock.class);
+
+    private final RedisTemplate<String, String> redis;
+    private final LockListener listener;
+    private final LockReleaseSubscriber releaseSubscriber;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long lockExpiryMillis;
+    private final String lockName;
+    private final String appName;
+
+    private final String ownerKey;
+    private final List<String> keys;
+    private final String releaseChannel;
+    private final String queueLeaseMillis;
+
+    public RedisFairLock(RedisTemplate<String, String> redis,
+                         LockListener listener,
+                         LockReleaseSubscriber releaseSubscriber,
+                         LongSupplier currentTimeSupplier,
+                         LongSupplier nanoTimeSupplier,
+                         long lockExpiryMillis,
+                         String lockName,
+                         String appName) {
+        this.redis = redis;
+        this.listener = listener;
+        this.releaseSubscriber = releaseSubscriber;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.lockExpiryMillis = lockExpiryMillis;
+        this.lockName = lockName;
+        this.appName = appName;
+        this.ownerKey = LockKeys.hashTagged(lockName, "owner");
+        this.keys = Arrays.asList(ownerKey, LockKeys.hashTagged(lockName, "queue"), LockKeys.hashTagged(lockName, "queueTimeouts"));
+        this.releaseChannel = LockReleaseSubscriber.releaseChannel(ownerKey);
+        //a waiter renews its place at the latest after sleeping lockExpiryMillis, so the lease survives one sleep
+        this.queueLeaseMillis = String.valueOf(2 * lockExpiryMillis);
+    }
+
+    @Override
+    public String getLockName() {
+        return lockName;
+    }
+
+    /**
+     * Run the runnable within the lock, queueing up for it for up to maxWait.
+     *
+     * @param runnable the action that should be performed
+     * @param maxWait  how long to wait in the queue, zero means fail fast
+     * @return true if the action could be performed in the lock. False if the lock was not handed over in time.
+     */
+    @Override
+    public boolean withLock(Runnable runnable, Duration maxWait) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
+        listener.onAttempt(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        long attemptNanos = nanoTimeSupplier.getAsLong();
+        boolean acquired = maxWait.isZero() || maxWait.isNegative()
+                ? tryLock(lockAttemptId, false) == 0
+                : awaitTurn(lockAttemptId, attemptNanos + maxWait.toNanos());
+        if (!acquired) {
+            listener.onBusy(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+            return false;
+        }
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        listener.onAcquired(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp, acquiredNanos - attemptNanos);
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            long releaseNanos = nanoTimeSupplier.getAsLong();
+            String heldLockValue;
+            try {
+                heldLockValue = redis.execute(LockScripts.FAIR_DELETE, keys, lockAttemptId.getValue(), releaseChannel);
+            } finally {
+                listener.onReleased(lockName, lockAttemptId.getValue(), releaseNanos - acquiredNanos,
+                        nanoTimeSupplier.getAsLong() - releaseNanos);
+            }
+            long lockExceedDuration = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos) - lockExpiryMillis;
+            if (heldLockValue == null) {
+                listener.onExpired(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), lockExceedDuration);
+            } else if (!heldLockValue.equals(lockAttemptId.getValue())) {
+                listener.onRace(lockName, lockAttemptId.getValue(), heldLockValue, currentTimeSupplier.getAsLong(), lockExceedDuration);
+            }
+        }
+    }
+
+    private boolean awaitTurn(LockAttemptId lockAttemptId, long deadline) {
+        //registered before the first attempt, so a turn signalled right after it is not lost
+        Semaphore turn = releaseSubscriber.registerTurn(ownerKey, lockAttemptId.getValue());
+        long queuedNanos = 0;
+        boolean acquired = false;
+        try {
+            while (true) {
+                long position = tryLock(lockAttemptId, true);
+                if (position == 0) {
+                    acquired = true;
+                    if (queuedNanos != 0) {
+                        long waitMillis = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - queuedNanos);
+                        listener.onTurn(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), waitMillis);
+                    }
+                    return true;
+                }
+                if (queuedNanos == 0) {
+                    queuedNanos = nanoTimeSupplier.getAsLong();
+                    listener.onQueued(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), position);
+                }
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - nanoTimeSupplier.getAsLong());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                //an expired lock or a crashed head waiter is not announced, so never sleep longer than the lock could be held
+                turn.tryAcquire(Math.min(remainingMillis, lockExpiryMillis), TimeUnit.MILLISECONDS);
+                turn.drainPermits();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Thread interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            releaseSubscriber.unregisterTurn(lockAttemptId.getValue());
+            if (!acquired) {
+                //also after a failed attempt, a queue entry left behind would hold up all other waiters until its lease ends
+                leaveQueue(lockAttemptId);
+            }
+        }
+    }
+
+    /**
+     * @return 0 if the lock was acquired, the position in the queue if queued, -1 if busy and not queued
+     */
+    private long tryLock(LockAttemptId lockAttemptId, boolean queue) {
+        Long result = redis.execute(
+                LockScripts.FAIR_ACQUIRE,
+                keys,
+                lockAttemptId.getValue(),
+                String.valueOf(lockExpiryMillis),
+                queueLeaseMillis,
+                queue ? "1" : "0"
+        );
+        //noinspection ConstantConditions
+        return result;
+    }
+
+    private void leaveQueue(LockAttemptId lockAttemptId) {
+        try {
+            redis.execute(LockScripts.FAIR_DEQUEUE, keys, lockAttemptId.getValue(), releaseChannel);
+        } catch (RuntimeException e) {
+            //best effort, the queue entry expires with its lease otherwise
+            LOG.warn("Lock attempt {} could not leave the queue", lockAttemptId.getValue(), e);
+        }
+    }
+}
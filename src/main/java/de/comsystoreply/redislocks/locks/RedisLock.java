@@ -1,39 +1,57 @@
 package de.comsystoreply.redislocks.locks;
 
-import de.comsystoreply.redislocks.MetricsReporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.data.redis.core.script.RedisScript;
-import org.springframework.data.util.Pair;
 
 import java.time.Duration;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.StringJoiner;
-import java.util.UUID;
-import java.util.function.Supplier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
-public class RedisLock {
+/**
+ * The lock all other single Redis instance lock variants of this application are built on. Logging, metrics and tracing
+ * are not part of it, the steps of every attempt are reported to a {@link LockListener} instead.
+ */
+public class RedisLock implements DistributedLock {
     private static final Logger LOG = LoggerFactory.getLogger(RedisLock.class);
 
+    //keyed by lock name, so all lock instances of the same name in this JVM share the hold count of a thread
+    private static final ThreadLocal<Map<String, HoldCount>> HOLD_COUNTS = ThreadLocal.withInitial(HashMap::new);
+
     private final RedisTemplate<String, String> redis;
-    private final MetricsReporter metricsReporter;
-    private final Supplier<Long> currentTimeSupplier;
+    private final LockListener listener;
+    private final LockReleaseSubscriber releaseSubscriber;
+    private final LockLeaseWatchdog leaseWatchdog;
+    private final LocalLockGate localGate;
+    private final HeldLockCache heldLockCache;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
     private final long lockExpiryMillis;
     private final String lockName;
     private final String appName;
 
     public RedisLock(RedisTemplate<String, String> redis,
-                     MetricsReporter metricsReporter,
-                     Supplier<Long> currentTimeSupplier,
+                     LockListener listener,
+                     LockReleaseSubscriber releaseSubscriber,
+                     LockLeaseWatchdog leaseWatchdog,
+                     LocalLockGate localGate,
+                     HeldLockCache heldLockCache,
+                     LongSupplier currentTimeSupplier,
+                     LongSupplier nanoTimeSupplier,
                      long lockExpiryMillis,
                      String lockName,
                      String appName) {
         this.redis = redis;
-        this.metricsReporter = metricsReporter;
+        this.listener = listener;
+        this.releaseSubscriber = releaseSubscriber;
+        this.leaseWatchdog = leaseWatchdog;
+        this.localGate = localGate;
+        this.heldLockCache = heldLockCache;
         this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
         this.lockExpiryMillis = lockExpiryMillis;
         this.lockName = lockName;
         this.appName = appName;
@@ -41,182 +59,212 @@ public class RedisLock {
 
     /**
      * Run the runnable within a held lock if possible otherwise returns false.
+     * With a lease watchdog the lock is renewed while the runnable is running, otherwise it expires after lockExpiryMillis.
      * This method is used when the operation within confined lock does not need to return a value.
      *
      * @param runnable the action that should be performed
      * @return true if the action could be performed in the lock. False if no lock could be acquired.
      */
+    @Override
     public boolean withLock(Runnable runnable) {
-        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier);
-        notifyLockAttempt(lockAttemptId);
-        boolean locked = tryLock(lockAttemptId);
+        return withLock(runnable, Duration.ZERO);
+    }
+
+    /**
+     * Run the runnable within a held lock, waiting up to maxWait for the lock to become free.
+     * Waiting threads are woken up by the release notification of the current holder instead of polling Redis.
+     * The lock is reentrant: nested calls of the owning thread run right away without touching Redis.
+     *
+     * @param runnable the action that should be performed
+     * @param maxWait  how long to wait for a busy lock, zero means fail fast
+     * @return true if the action could be performed in the lock. False if no lock could be acquired in time.
+     */
+    @Override
+    public boolean withLock(Runnable runnable, Duration maxWait) {
+        return withLock(runnable, maxWait, null);
+    }
+
+    /**
+     * Run the runnable within a held lock, retrying a busy lock for up to maxWait as scheduled by the retry policy
+     * instead of waiting for release notifications. A busy attempt reports the remaining time to live of the lock
+     * in the same round trip, which e.g. {@link LockRetryPolicy#lockTtl(long, long)} uses to retry right when it expires.
+     *
+     * @param runnable    the action that should be performed
+     * @param maxWait     how long to retry a busy lock, zero means fail fast
+     * @param retryPolicy the schedule of the retries, null to wait for release notifications
+     * @return true if the action could be performed in the lock. False if no lock could be acquired in time.
+     */
+    public boolean withLock(Runnable runnable, Duration maxWait, LockRetryPolicy retryPolicy) {
+        Map<String, HoldCount> holdCounts = HOLD_COUNTS.get();
+        HoldCount holdCount = holdCounts.get(lockName);
+        if (holdCount != null) {
+            holdCount.value++;
+            try {
+                runnable.run();
+                return true;
+            } finally {
+                holdCount.value--;
+            }
+        }
+
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
+        listener.onAttempt(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        boolean waiting = !maxWait.isZero() && !maxWait.isNegative();
+        long attemptNanos = nanoTimeSupplier.getAsLong();
+        long deadline = attemptNanos + (waiting ? maxWait.toNanos() : 0);
+        if (!enterLocalGate(lockAttemptId, waiting, deadline)) {
+            listener.onBusy(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+            return false;
+        }
+        boolean locked;
+        try {
+            if (!waiting) {
+                locked = tryLock(lockAttemptId, true) == 0;
+            } else if (retryPolicy == null) {
+                locked = awaitLock(lockAttemptId, deadline);
+            } else {
+                locked = retryLock(lockAttemptId, deadline, retryPolicy);
+            }
+        } catch (RuntimeException e) {
+            localGate.exit(lockName);
+            throw e;
+        }
         if (!locked) {
-            notifyLockBusy(lockAttemptId);
+            localGate.exit(lockName);
+            listener.onBusy(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
             return false;
         }
-        notifyLockSuccess(lockAttemptId);
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        listener.onAcquired(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp, acquiredNanos - attemptNanos);
+        LockLeaseWatchdog.Lease lease = leaseWatchdog == null
+                ? null
+                : leaseWatchdog.hold(lockAttemptId.getKey(), lockAttemptId.getValue(), lockExpiryMillis);
+        holdCounts.put(lockName, new HoldCount());
         try {
             runnable.run();
             return true;
         } finally {
-            String heldLockValue = redis.execute(
-                    deleteScript(),
-                    Collections.singletonList(lockAttemptId.getKey()),
-                    new Object[]{lockAttemptId.getValue()}
-            );
+            holdCounts.remove(lockName);
+            if (lease != null) {
+                leaseWatchdog.release(lease);
+            }
+            long releaseNanos = nanoTimeSupplier.getAsLong();
+            String heldLockValue;
+            try {
+                heldLockValue = redis.execute(
+                        LockScripts.DELETE,
+                        Collections.singletonList(lockAttemptId.getKey()),
+                        lockAttemptId.getValue(),
+                        LockReleaseSubscriber.releaseChannel(lockAttemptId.getKey())
+                );
+            } finally {
+                localGate.exit(lockName);
+                listener.onReleased(lockName, lockAttemptId.getValue(), releaseNanos - acquiredNanos,
+                        nanoTimeSupplier.getAsLong() - releaseNanos);
+            }
             //noinspection ConstantConditions
             if (heldLockValue == null) {
-                notifyLockExpired(lockAttemptId);
+                listener.onExpired(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(),
+                        lockExceedDuration(acquiredNanos));
             } else if (!heldLockValue.equals(lockAttemptId.getValue())) {
-                notifyRaceCondition(heldLockValue, lockAttemptId);
+                listener.onRace(lockName, lockAttemptId.getValue(), heldLockValue, currentTimeSupplier.getAsLong(),
+                        lockExceedDuration(acquiredNanos));
             }
         }
     }
 
-    private void notifyLockExpired(LockAttemptId lockAttemptId) {
-        //another process could have obtained the lock and finished his process before
-        LOG.warn("LOCK '{}', execution for value '{}' was finished after lock expired - possible race condition detected",
-                lockAttemptId.getKey(), lockAttemptId.getValue());
-        metricsReporter.collectMetric(
-                currentTimeSupplier.get(),
-                lockAttemptId.getKey(),
-                Arrays.asList(
-                        Pair.of("appName", appName),
-                        Pair.of("eventType", "lockRace"),
-                        Pair.of("raceType", "unknown")
-                ),
-                Arrays.asList(
-                        Pair.of("lockExceedDuration", currentTimeSupplier.get() - lockAttemptId.timestamp - lockExpiryMillis),
-                        Pair.of("lockId", lockAttemptId.getValue())
-                )
-        );
+    @Override
+    public String getLockName() {
+        return lockName;
     }
 
-    private void notifyRaceCondition(String heldLockValue, LockAttemptId lockAttemptId) {
-        LOG.warn("LOCK '{}', execution for value '{}' was finished after another process obtained the lock with value '{}' - race condition detected",
-                lockAttemptId.getKey(), lockAttemptId.getValue(), heldLockValue);
-        metricsReporter.collectMetric(
-                currentTimeSupplier.get(),
-                lockAttemptId.getKey(),
-                Arrays.asList(
-                        Pair.of("appName", appName),
-                        Pair.of("eventType", "lockRace"),
-                        Pair.of("raceType", "race")
-                ),
-                Arrays.asList(
-                        Pair.of("lockExceedDuration", currentTimeSupplier.get() - lockAttemptId.timestamp - lockExpiryMillis),
-                        Pair.of("lockId", lockAttemptId.getValue())
-                )
-        );
+    /**
+     * @return how many times the current thread holds this lock, 0 if it does not hold it
+     */
+    public int getHoldCount() {
+        HoldCount holdCount = HOLD_COUNTS.get().get(lockName);
+        return holdCount == null ? 0 : holdCount.value;
     }
 
-    private void notifyLockSuccess(LockAttemptId lockAttemptId) {
-        LOG.info("LOCK '{}', an attempt to obtain with value '{}' SUCCESS", lockAttemptId.getKey(), lockAttemptId.getValue());
-        metricsReporter.collectMetric(
-                lockAttemptId.timestamp,
-                lockAttemptId.getKey(),
-                Arrays.asList(
-                        Pair.of("appName", appName),
-                        Pair.of("eventType", "lockSuccess")
-                ),
-                Arrays.asList(
-                        Pair.of("lockId", lockAttemptId.getValue())
-                )
-        );
+    /**
+     * @param cached whether a lock known to be held by the held lock cache fails without asking Redis
+     * @return 0 if the lock was acquired by this thread/node, otherwise the remaining time to live of the lock, -1 if it has none
+     */
+    private long tryLock(LockAttemptId lockAttemptId, boolean cached) {
+        if (heldLockCache == null) {
+            return acquire(lockAttemptId);
+        }
+        if (cached) {
+            long cachedTtlMillis = heldLockCache.remainingMillis(lockAttemptId.getKey());
+            if (cachedTtlMillis > 0) {
+                return cachedTtlMillis;
+            }
+        }
+        long seenStamp = heldLockCache.stamp(lockAttemptId.getKey());
+        long lockTtlMillis = acquire(lockAttemptId);
+        if (lockTtlMillis != 0) {
+            heldLockCache.held(lockAttemptId.getKey(), lockTtlMillis, seenStamp);
+        }
+        return lockTtlMillis;
     }
 
-    private void notifyLockBusy(LockAttemptId lockAttemptId) {
-        LOG.info("LOCK '{}', an attempt to obtain with value '{}' FAILED - lock busy", lockAttemptId.getKey(), lockAttemptId.getValue());
-        metricsReporter.collectMetric(
-                lockAttemptId.timestamp,
-                lockAttemptId.getKey(),
-                Arrays.asList(
-                        Pair.of("appName", appName),
-                        Pair.of("eventType", "lockBusy")
-                ),
-                Arrays.asList(
-                        Pair.of("lockId", lockAttemptId.getValue())
-                )
+    private long acquire(LockAttemptId lockAttemptId) {
+        Long result = redis.execute(
+                LockScripts.ACQUIRE,
+                Collections.singletonList(lockAttemptId.getKey()),
+                lockAttemptId.getValue(),
+                String.valueOf(lockExpiryMillis)
         );
+        //noinspection ConstantConditions
+        return result;
     }
 
-    private void notifyLockAttempt(LockAttemptId lockAttemptId) {
-        LOG.info("LOCK '{}', an attempt to obtain with value '{}'", lockAttemptId.getKey(), lockAttemptId.getValue());
-        metricsReporter.collectMetric(
-                lockAttemptId.timestamp,
-                lockAttemptId.getKey(),
-                Arrays.asList(
-                        Pair.of("appName", appName),
-                        Pair.of("eventType", "lockAttempt")
-                ),
-                Arrays.asList(
-                        Pair.of("lockId", lockAttemptId.getValue())
-                )
-        );
+    private long lockExceedDuration(long acquiredNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos) - lockExpiryMillis;
     }
 
-
-    private boolean tryLock(LockAttemptId lockAttemptId) {
-        boolean lockFree = redis.opsForValue().setIfAbsent(
-                lockAttemptId.getKey(),
-                lockAttemptId.getValue(),
-                Duration.ofMillis(lockExpiryMillis)
-        );
-
-        if (lockFree) {
-            //lock is free and was acquired by this thread/node
+    private boolean enterLocalGate(LockAttemptId lockAttemptId, boolean waiting, long deadline) {
+        if (localGate.tryEnter(lockName)) {
             return true;
         }
-
-        return false;
+        //another thread of this JVM is contending for or holding the lock, which saves this thread a Redis call
+        listener.onGated(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        return waiting && localGate.enter(lockName, deadline - nanoTimeSupplier.getAsLong());
     }
 
-
-    private static RedisScript<String> deleteScript() {
-//        Redis uses the same Lua interpreter to run all the commands.
-//        Also Redis guarantees that a script is executed in an atomic way:
-//        no other script or Redis command will be executed while a script is being executed.
-//        This semantic is similar to the one of MULTI / EXEC.
-//        From the point of view of all the other clients the effects of a script are either still not visible or already completed.
-//        If a key with expiry (ttl) exists at the start of eval, it will not get expired during the evaluation of a script.
-        return new DefaultRedisScript<>(
-                "local current = redis.call('GET', KEYS[1]) " +
-                        "if current == ARGV[1] then " +
-                        "   redis.call(\"del\", KEYS[1]) " +
-                        "   return ARGV[1] " +
-                        "else " +
-                        "   return current " +
-                        "end ",
-                String.class
+    private boolean awaitLock(LockAttemptId lockAttemptId, long deadline) {
+        return releaseSubscriber.awaitAcquire(
+                lockAttemptId.getKey(),
+                //the release notification may overtake the invalidation of the cache, so always ask Redis
+                () -> tryLock(lockAttemptId, false) == 0,
+                deadline,
+                nanoTimeSupplier,
+                lockExpiryMillis
         );
     }
 
-    private static class LockAttemptId {
-        private final String id;
-        private final String appName;
-        private final String lockName;
-        private final long timestamp;
-
-        LockAttemptId(String appName, String lockName, Supplier<Long> currentTimeSupplier) {
-            this.id = UUID.randomUUID().toString();
-            this.appName = appName;
-            this.lockName = lockName;
-            this.timestamp = currentTimeSupplier.get();
-        }
-
-        String getKey() {
-            return lockName;
-        }
-
-        String getValue() {
-            return new StringJoiner("_")
-                    .add(lockName)
-                    .add(appName)
-                    .add(id)
-                    .add(String.valueOf(timestamp))
-                    .toString();
+    private boolean retryLock(LockAttemptId lockAttemptId, long deadline, LockRetryPolicy retryPolicy) {
+        int attempt = 0;
+        long delayMillis = 0;
+        long lockTtlMillis;
+        while ((lockTtlMillis = tryLock(lockAttemptId, true)) != 0) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - nanoTimeSupplier.getAsLong());
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            delayMillis = retryPolicy.nextDelayMillis(++attempt, delayMillis, lockTtlMillis);
+            try {
+                Thread.sleep(Math.min(remainingMillis, delayMillis));
+            } catch (InterruptedException e) {
+                LOG.warn("Thread interrupted");
+                Thread.currentThread().interrupt();
+                return false;
+            }
         }
+        return true;
     }
 
-
+    private static final class HoldCount {
+        private int value = 1;
+    }
 }
@@ -3,14 +3,16 @@ package de.comsystoreply.redislocks.locks;
 import org.springframework.data.redis.core.RedisTemplate;
 
 import java.time.Duration;
-import java.util.StringJoiner;
-import java.util.UUID;
-import java.util.function.Supplier;
+import java.util.function.LongSupplier;
 
-public class RedisLockBroken {
+public class RedisLockBroken implements DistributedLock {
 
-    public boolean withLock(Runnable runnable) {
-        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier);
+    /**
+     * Makes a single attempt, maxWait is ignored.
+     */
+    @Override
+    public boolean withLock(Runnable runnable, Duration maxWait) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
         boolean locked = tryLock(lockAttemptId);
         if (!locked) {
             return false;
@@ -40,14 +42,14 @@ public class RedisLockBroken {
     }
 
     private final RedisTemplate<String, String> redis;
-    private final Supplier<Long> currentTimeSupplier;
+    private final LongSupplier currentTimeSupplier;
     private final long lockExpiryMillis;
     private final String lockName;
     private final String appName;
 
 
     public RedisLockBroken(RedisTemplate<String, String> redis,
-                           Supplier<Long> currentTimeSupplier,
+                           LongSupplier currentTimeSupplier,
                            long lockExpiryMillis,
                            String lockName,
                            String appName) {
@@ -58,32 +60,9 @@ public class RedisLockBroken {
         this.appName = appName;
     }
 
-
-    private static class LockAttemptId {
-        private final String id;
-        private final String appName;
-        private final String lockName;
-        private final long timestamp;
-
-        LockAttemptId(String appName, String lockName, Supplier<Long> currentTimeSupplier) {
-            this.appName = appName;
-            this.id = UUID.randomUUID().toString();
-            this.lockName = lockName;
-            this.timestamp = currentTimeSupplier.get();
-        }
-
-        String getKey() {
-            return lockName;
-        }
-
-        String getValue() {
-            return new StringJoiner("_")
-                    .add(lockName)
-                    .add(appName)
-                    .add(id)
-                    .add(String.valueOf(timestamp))
-                    .toString();
-        }
+    @Override
+    public String getLockName() {
+        return lockName;
     }
 
 
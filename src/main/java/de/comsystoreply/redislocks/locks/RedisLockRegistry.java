@@ -0,0 +1,143 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out locks by name, e.g. per entity ID. All locks share the Redis connections, scripts, lock listener,
+ * release subscriber, lease watchdog, local gate and held lock cache of the registry.
+ * <p>
+ * A lock object only holds references to the shared parts, state like hold counts and gates is kept by lock name.
+ * That is why evicting a lock from the cache is always safe: a later lookup just creates a new lock object.
+ * The cache is bounded by maxSize; once exceeded, idle locks and their release subscriptions are evicted.
+ */
+public class RedisLockRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(RedisLockRegistry.class);
+
+    private final RedisTemplate<String, String> redis;
+    private final LockListener listener;
+    private final LockReleaseSubscriber releaseSubscriber;
+    private final LockLeaseWatchdog leaseWatchdog;
+    private final LocalLockGate localGate;
+    private final HeldLockCache heldLockCache;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long lockExpiryMillis;
+    private final String appName;
+    private final int maxSize;
+    private final long idleNanos;
+
+    private final ConcurrentMap<String, Entry> locks = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public RedisLockRegistry(RedisTemplate<String, String> redis,
+                             LockListener listener,
+                             LockReleaseSubscriber releaseSubscriber,
+                             LockLeaseWatchdog leaseWatchdog,
+                             LocalLockGate localGate,
+                             HeldLockCache heldLockCache,
+                             LongSupplier currentTimeSupplier,
+                             LongSupplier nanoTimeSupplier,
+                             long lockExpiryMillis,
+                             String appName,
+                             int maxSize,
+                             long idleMillis) {
+        this.redis = redis;
+        this.listener = listener;
+        this.releaseSubscriber = releaseSubscriber;
+        this.leaseWatchdog = leaseWatchdog;
+        this.localGate = localGate;
+        this.heldLockCache = heldLockCache;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.lockExpiryMillis = lockExpiryMillis;
+        this.appName = appName;
+        this.maxSize = maxSize;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * @param lockName the name of the lock, also used as its Redis key
+     * @return the lock for the name, lookups of cached locks do not block
+     */
+    public RedisLock obtain(String lockName) {
+        long now = nanoTimeSupplier.getAsLong();
+        Entry entry = locks.get(lockName);
+        if (entry == null) {
+            entry = locks.computeIfAbsent(lockName, name -> new Entry(newLock(name)));
+            if (locks.size() > maxSize) {
+                evict(now);
+            }
+        }
+        entry.lastUsedNanos = now;
+        return entry.lock;
+    }
+
+    public int size() {
+        return locks.size();
+    }
+
+    private RedisLock newLock(String lockName) {
+        return new RedisLock(
+                redis,
+                listener,
+                releaseSubscriber,
+                leaseWatchdog,
+                localGate,
+                heldLockCache,
+                currentTimeSupplier,
+                nanoTimeSupplier,
+                lockExpiryMillis,
+                lockName,
+                appName
+        );
+    }
+
+    private void evict(long now) {
+        //one thread evicts, the others carry on without waiting for it
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int sizeBefore = locks.size();
+            Iterator<Map.Entry<String, Entry>> iterator = locks.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                if (now - entry.getValue().lastUsedNanos > idleNanos) {
+                    remove(iterator, entry.getKey());
+                }
+            }
+            //still too many recently used locks, shrink to three quarters to not evict on every new name
+            iterator = locks.entrySet().iterator();
+            while (locks.size() > maxSize / 4 * 3 && iterator.hasNext()) {
+                remove(iterator, iterator.next().getKey());
+            }
+            LOG.info("Lock registry evicted {} of {} locks", sizeBefore - locks.size(), sizeBefore);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void remove(Iterator<Map.Entry<String, Entry>> iterator, String lockName) {
+        iterator.remove();
+        releaseSubscriber.unsubscribeIfIdle(lockName);
+    }
+
+    private static final class Entry {
+        private final RedisLock lock;
+        private volatile long lastUsedNanos;
+
+        Entry(RedisLock lock) {
+            this.lock = lock;
+        }
+    }
+}
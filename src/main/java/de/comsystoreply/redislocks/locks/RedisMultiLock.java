@@ -0,0 +1,111 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Locks several resources at once: all keys are set with the same value and expiry in a single script, or none is.
+ * The keys are released together by one owner-checked script, so both acquire and release cost one round trip
+ * independent of the amount of keys and there is no lock ordering that could deadlock.
+ * The listener is told about every step once per lock name.
+ */
+public class RedisMultiLock {
+
+    private final RedisTemplate<String, String> redis;
+    private final LockListener listener;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long lockExpiryMillis;
+    private final String appName;
+    private final boolean cluster;
+
+    public RedisMultiLock(RedisTemplate<String, String> redis,
+                          LockListener listener,
+                          LongSupplier currentTimeSupplier,
+                          LongSupplier nanoTimeSupplier,
+                          long lockExpiryMillis,
+                          String appName) {
+        this.redis = redis;
+        this.listener = listener;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.lockExpiryMillis = lockExpiryMillis;
+        this.appName = appName;
+        this.cluster = LockKeys.isCluster(redis);
+    }
+
+    /**
+     * Run the runnable within all the named locks if possible otherwise returns false.
+     * In a Redis Cluster all lock names have to share a hash tag, see {@link LockKeys#hashTagged(String, String)}.
+     *
+     * @param lockNames the names of all locks that have to be held
+     * @param runnable  the action that should be performed
+     * @return true if the action could be performed in the locks. False if at least one lock was busy.
+     */
+    public boolean withLocks(Collection<String> lockNames, Runnable runnable) {
+        List<String> keys = new ArrayList<>(new TreeSet<>(lockNames));
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one lock name is required");
+        }
+        if (cluster) {
+            LockKeys.requireSameSlot(keys);
+        }
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, String.join("+", keys), currentTimeSupplier.getAsLong());
+        String lockValue = lockAttemptId.getValue();
+        for (String key : keys) {
+            listener.onAttempt(key, lockValue, lockAttemptId.timestamp);
+        }
+        long attemptNanos = nanoTimeSupplier.getAsLong();
+        Long busyKeyIndex = redis.execute(
+                LockScripts.MULTI_ACQUIRE,
+                keys,
+                lockValue,
+                String.valueOf(lockExpiryMillis)
+        );
+        //noinspection ConstantConditions
+        if (busyKeyIndex != 0) {
+            for (String key : keys) {
+                listener.onBusy(key, lockValue, lockAttemptId.timestamp);
+            }
+            return false;
+        }
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        for (String key : keys) {
+            listener.onAcquired(key, lockValue, lockAttemptId.timestamp, acquiredNanos - attemptNanos);
+        }
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            long releaseNanos = nanoTimeSupplier.getAsLong();
+            List<String> expired;
+            try {
+                expired = redis.execute(
+                        LockScripts.MULTI_DELETE,
+                        keys,
+                        lockValue,
+                        LockReleaseSubscriber.RELEASE_CHANNEL_SUFFIX
+                );
+            } finally {
+                long releasedNanos = nanoTimeSupplier.getAsLong();
+                for (String key : keys) {
+                    listener.onReleased(key, lockValue, releaseNanos - acquiredNanos, releasedNanos - releaseNanos);
+                }
+            }
+            //noinspection ConstantConditions
+            if (!expired.isEmpty()) {
+                long timestamp = currentTimeSupplier.getAsLong();
+                long lockExceedDuration = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos) - lockExpiryMillis;
+                for (String key : expired) {
+                    listener.onExpired(key, lockValue, timestamp, lockExceedDuration);
+                }
+            }
+        }
+    }
+}
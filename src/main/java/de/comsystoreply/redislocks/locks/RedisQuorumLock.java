@@ -0,0 +1,180 @@
+package de.comsystoreply.redislocks.locks;
+
+import de.comsystoreply.redislocks.LockEventType;
+import de.comsystoreply.redislocks.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Redlock style lock held on a majority of independent Redis masters, so a single failing master does not
+ * take the lock down. The lock is acquired and released on all masters concurrently, the validity of an acquired
+ * lock is its expiry minus the time the acquisition took and a clock drift allowance, measured with a monotonic clock.
+ */
+public class RedisQuorumLock {
+    private static final Logger LOG = LoggerFactory.getLogger(RedisQuorumLock.class);
+
+    private final List<RedisTemplate<String, String>> masters;
+    private final List<String> masterNames;
+    private final ExecutorService executor;
+    private final MetricsReporter metricsReporter;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long lockExpiryMillis;
+    private final String lockName;
+    private final String appName;
+    private final int quorum;
+
+    public RedisQuorumLock(List<RedisTemplate<String, String>> masters,
+                           List<String> masterNames,
+                           ExecutorService executor,
+                           MetricsReporter metricsReporter,
+                           LongSupplier currentTimeSupplier,
+                           LongSupplier nanoTimeSupplier,
+                           long lockExpiryMillis,
+                           String lockName,
+                           String appName) {
+        if (masters.size() != masterNames.size()) {
+            throw new IllegalArgumentException(String.format("Got %d masters but %d names", masters.size(), masterNames.size()));
+        }
+        this.masters = masters;
+        this.masterNames = masterNames;
+        this.executor = executor;
+        this.metricsReporter = metricsReporter;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.lockExpiryMillis = lockExpiryMillis;
+        this.lockName = lockName;
+        this.appName = appName;
+        this.quorum = masters.size() / 2 + 1;
+    }
+
+    /**
+     * Run the runnable within a lock held on a majority of the masters if possible otherwise returns false.
+     * The runnable should finish within the validity of the lock, which is logged on success.
+     *
+     * @param runnable the action that should be performed
+     * @return true if the action could be performed in the lock. False if no quorum could be reached in time.
+     */
+    public boolean withLock(Runnable runnable) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
+        notifyLockEvent(LockEventType.LOCK_ATTEMPT, lockAttemptId, lockAttemptId.timestamp, 0);
+        long startNanos = nanoTimeSupplier.getAsLong();
+        List<CompletableFuture<Boolean>> acquisitions = new ArrayList<>(masters.size());
+        for (int i = 0; i < masters.size(); i++) {
+            int master = i;
+            acquisitions.add(CompletableFuture.supplyAsync(() -> tryLock(master, lockAttemptId), executor));
+        }
+        int acquired = 0;
+        for (CompletableFuture<Boolean> acquisition : acquisitions) {
+            if (awaitResult(acquisition, deadlineMillis(startNanos))) {
+                acquired++;
+            }
+        }
+        long validityMillis = deadlineMillis(startNanos) - clockDriftMillis();
+
+        if (acquired < quorum || validityMillis <= 0) {
+            LOG.info("LOCK '{}', an attempt to obtain with value '{}' FAILED - acquired on {} of {} masters, validity {} ms",
+                    lockAttemptId.getKey(), lockAttemptId.getValue(), acquired, masters.size(), validityMillis);
+            release(lockAttemptId);
+            notifyLockEvent(LockEventType.LOCK_BUSY, lockAttemptId, lockAttemptId.timestamp, 0);
+            return false;
+        }
+        LOG.info("LOCK '{}', an attempt to obtain with value '{}' SUCCESS - acquired on {} of {} masters, validity {} ms",
+                lockAttemptId.getKey(), lockAttemptId.getValue(), acquired, masters.size(), validityMillis);
+        notifyLockEvent(LockEventType.LOCK_SUCCESS, lockAttemptId, lockAttemptId.timestamp, 0);
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            int released = release(lockAttemptId);
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos);
+            if (released < quorum || heldMillis > validityMillis) {
+                LOG.warn("LOCK '{}', execution for value '{}' was finished after lock validity - released on {} of {} masters after {} ms - possible race condition detected",
+                        lockAttemptId.getKey(), lockAttemptId.getValue(), released, masters.size(), heldMillis);
+                notifyLockEvent(LockEventType.LOCK_EXPIRED, lockAttemptId, currentTimeSupplier.getAsLong(), heldMillis - validityMillis);
+            }
+        }
+    }
+
+    private boolean tryLock(int master, LockAttemptId lockAttemptId) {
+        //measured on the worker, so the latency of a master does not include waiting for a thread
+        long commandNanos = nanoTimeSupplier.getAsLong();
+        try {
+            Boolean lockFree = masters.get(master).opsForValue().setIfAbsent(
+                    lockAttemptId.getKey(),
+                    lockAttemptId.getValue(),
+                    Duration.ofMillis(lockExpiryMillis)
+            );
+            return Boolean.TRUE.equals(lockFree);
+        } catch (RuntimeException e) {
+            LOG.warn("LOCK '{}', an attempt to obtain on master {} failed", lockAttemptId.getKey(), masterNames.get(master), e);
+            return false;
+        } finally {
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(nanoTimeSupplier.getAsLong() - commandNanos);
+            metricsReporter.recordLockEvent(LockEventType.QUORUM_ACQUIRE, lockAttemptId.timestamp, lockAttemptId.getKey(),
+                    appName, lockAttemptId.getValue(), latencyMicros, masterNames.get(master));
+        }
+    }
+
+    /**
+     * Releases on all masters, including those the acquisition failed or timed out on, as the SET may still have happened.
+     *
+     * @return the amount of masters the lock was still held on
+     */
+    private int release(LockAttemptId lockAttemptId) {
+        List<CompletableFuture<Boolean>> releases = new ArrayList<>(masters.size());
+        for (RedisTemplate<String, String> master : masters) {
+            releases.add(CompletableFuture.supplyAsync(() -> lockAttemptId.getValue().equals(master.execute(
+                    LockScripts.DELETE,
+                    Collections.singletonList(lockAttemptId.getKey()),
+                    lockAttemptId.getValue(),
+                    LockReleaseSubscriber.releaseChannel(lockAttemptId.getKey())
+            )), executor));
+        }
+        int released = 0;
+        for (CompletableFuture<Boolean> release : releases) {
+            if (awaitResult(release, lockExpiryMillis)) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    private long deadlineMillis(long startNanos) {
+        return lockExpiryMillis - TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - startNanos);
+    }
+
+    private long clockDriftMillis() {
+        //as proposed by the Redlock algorithm: 1% of the expiry plus 2 ms for the granularity of Redis expiries
+        return lockExpiryMillis / 100 + 2;
+    }
+
+    private static boolean awaitResult(CompletableFuture<Boolean> result, long timeoutMillis) {
+        try {
+            return result.get(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            LOG.warn("Thread interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private void notifyLockEvent(LockEventType type, LockAttemptId lockAttemptId, long timestamp, long value) {
+        metricsReporter.recordLockEvent(type, timestamp, lockAttemptId.getKey(), appName, lockAttemptId.getValue(), value);
+    }
+}
@@ -0,0 +1,226 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Shared/exclusive lock: any amount of readers hold the lock concurrently, a writer holds it alone.
+ * Readers are kept as tokens with their own expiry in a hash, the writer as an owner-checked key like {@link RedisLock}.
+ * A writer finding readers leaves a waiting marker that keeps new readers out until the present ones drained,
+ * so a steady stream of readers cannot starve writers.
+ * All keys share the hash tag of the lock name, so the lock also works in a Redis Cluster.
+ * {@link #readLock()} and {@link #writeLock()} offer both sides as a {@link DistributedLock}.
+ */
+public class RedisReadWriteLock {
+
+    private final RedisTemplate<String, String> redis;
+    private final LockListener listener;
+    private final LockReleaseSubscriber releaseSubscriber;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long lockExpiryMillis;
+    private final String lockName;
+    private final String appName;
+
+    private final String writerKey;
+    private final String readersKey;
+    private final String writerWaitingKey;
+    private final List<String> keys;
+    private final String releaseChannel;
+    private final DistributedLock readLock = new Side(this::withReadLock);
+    private final DistributedLock writeLock = new Side(this::withWriteLock);
+
+    public RedisReadWriteLock(RedisTemplate<String, String> redis,
+                              LockListener listener,
+                              LockReleaseSubscriber releaseSubscriber,
+                              LongSupplier currentTimeSupplier,
+                              LongSupplier nanoTimeSupplier,
+                              long lockExpiryMillis,
+                              String lockName,
+                              String appName) {
+        this.redis = redis;
+        this.listener = listener;
+        this.releaseSubscriber = releaseSubscriber;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.lockExpiryMillis = lockExpiryMillis;
+        this.lockName = lockName;
+        this.appName = appName;
+        this.writerKey = LockKeys.hashTagged(lockName, "writer");
+        this.readersKey = LockKeys.hashTagged(lockName, "readers");
+        this.writerWaitingKey = LockKeys.hashTagged(lockName, "writerWaiting");
+        this.keys = Arrays.asList(writerKey, readersKey, writerWaitingKey);
+        //writer releases and the last reader leaving are both announced here
+        this.releaseChannel = LockReleaseSubscriber.releaseChannel(writerKey);
+    }
+
+    public DistributedLock readLock() {
+        return readLock;
+    }
+
+    public DistributedLock writeLock() {
+        return writeLock;
+    }
+
+    public boolean withReadLock(Runnable runnable) {
+        return withReadLock(runnable, Duration.ZERO);
+    }
+
+    /**
+     * Run the runnable within the shared lock, waiting up to maxWait while a writer holds the lock or waits for it.
+     *
+     * @param runnable the action that should be performed
+     * @param maxWait  how long to wait for a writer, zero means fail fast
+     * @return true if the action could be performed in the lock. False if no lock could be acquired in time.
+     */
+    public boolean withReadLock(Runnable runnable, Duration maxWait) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
+        listener.onAttempt(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        long attemptNanos = nanoTimeSupplier.getAsLong();
+        if (!acquire(lockAttemptId, attemptNanos, maxWait, this::tryReadLock)) {
+            listener.onBusy(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+            return false;
+        }
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            long releaseNanos = nanoTimeSupplier.getAsLong();
+            Long released;
+            try {
+                released = redis.execute(
+                        LockScripts.READ_DELETE,
+                        Collections.singletonList(readersKey),
+                        lockAttemptId.getValue(),
+                        releaseChannel
+                );
+            } finally {
+                listener.onReleased(lockName, lockAttemptId.getValue(), releaseNanos - acquiredNanos,
+                        nanoTimeSupplier.getAsLong() - releaseNanos);
+            }
+            //noinspection ConstantConditions
+            if (released == 0) {
+                listener.onExpired(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), lockExceedDuration(acquiredNanos));
+            }
+        }
+    }
+
+    public boolean withWriteLock(Runnable runnable) {
+        return withWriteLock(runnable, Duration.ZERO);
+    }
+
+    /**
+     * Run the runnable within the exclusive lock, waiting up to maxWait for another writer or the readers to finish.
+     *
+     * @param runnable the action that should be performed
+     * @param maxWait  how long to wait for the lock, zero means fail fast
+     * @return true if the action could be performed in the lock. False if no lock could be acquired in time.
+     */
+    public boolean withWriteLock(Runnable runnable, Duration maxWait) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, lockName, currentTimeSupplier.getAsLong());
+        listener.onAttempt(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        long attemptNanos = nanoTimeSupplier.getAsLong();
+        if (!acquire(lockAttemptId, attemptNanos, maxWait, this::tryWriteLock)) {
+            //let readers in again, the marker of a writer that gave up would block them until it expires
+            redis.execute(LockScripts.DELETE, Collections.singletonList(writerWaitingKey), lockAttemptId.getValue(), releaseChannel);
+            listener.onBusy(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+            return false;
+        }
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        listener.onAcquired(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp, acquiredNanos - attemptNanos);
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            long releaseNanos = nanoTimeSupplier.getAsLong();
+            String heldLockValue;
+            try {
+                heldLockValue = redis.execute(
+                        LockScripts.DELETE,
+                        Collections.singletonList(writerKey),
+                        lockAttemptId.getValue(),
+                        releaseChannel
+                );
+            } finally {
+                listener.onReleased(lockName, lockAttemptId.getValue(), releaseNanos - acquiredNanos,
+                        nanoTimeSupplier.getAsLong() - releaseNanos);
+            }
+            if (heldLockValue == null) {
+                listener.onExpired(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), lockExceedDuration(acquiredNanos));
+            } else if (!heldLockValue.equals(lockAttemptId.getValue())) {
+                listener.onRace(lockName, lockAttemptId.getValue(), heldLockValue, currentTimeSupplier.getAsLong(),
+                        lockExceedDuration(acquiredNanos));
+            }
+        }
+    }
+
+    private boolean tryReadLock(LockAttemptId lockAttemptId, long attemptNanos) {
+        Long readers = redis.execute(LockScripts.READ_ACQUIRE, keys, lockAttemptId.getValue(), String.valueOf(lockExpiryMillis));
+        //noinspection ConstantConditions
+        if (readers == 0) {
+            return false;
+        }
+        listener.onReadAcquired(lockName, lockAttemptId.getValue(), lockAttemptId.timestamp,
+                nanoTimeSupplier.getAsLong() - attemptNanos, readers);
+        return true;
+    }
+
+    private boolean tryWriteLock(LockAttemptId lockAttemptId, long attemptNanos) {
+        Long result = redis.execute(LockScripts.WRITE_ACQUIRE, keys, lockAttemptId.getValue(), String.valueOf(lockExpiryMillis));
+        //noinspection ConstantConditions
+        if (result == 0) {
+            return true;
+        }
+        if (result > 0) {
+            listener.onWaitingForReaders(lockName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), result);
+        }
+        return false;
+    }
+
+    private boolean acquire(LockAttemptId lockAttemptId, long attemptNanos, Duration maxWait, Attempt tryAcquire) {
+        if (maxWait.isZero() || maxWait.isNegative()) {
+            return tryAcquire.tryAcquire(lockAttemptId, attemptNanos);
+        }
+        return releaseSubscriber.awaitAcquire(
+                writerKey,
+                () -> tryAcquire.tryAcquire(lockAttemptId, attemptNanos),
+                attemptNanos + maxWait.toNanos(),
+                nanoTimeSupplier,
+                lockExpiryMillis
+        );
+    }
+
+    private long lockExceedDuration(long acquiredNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos) - lockExpiryMillis;
+    }
+
+    private interface Attempt {
+        boolean tryAcquire(LockAttemptId lockAttemptId, long attemptNanos);
+    }
+
+    private final class Side implements DistributedLock {
+        private final BiPredicate<Runnable, Duration> withLock;
+
+        private Side(BiPredicate<Runnable, Duration> withLock) {
+            this.withLock = withLock;
+        }
+
+        @Override
+        public String getLockName() {
+            return lockName;
+        }
+
+        @Override
+        public boolean withLock(Runnable runnable, Duration maxWait) {
+            return withLock.test(runnable, maxWait);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Distributed semaphore: up to {@code permits} holders across all nodes, e.g. for a downstream API with a concurrency limit.
+ * Every holder owns a lease token in a sorted set scored by the lease expiry. Acquire and release each are a single script,
+ * both remove expired leases first, so the permit of a crashed holder is free again after its lease.
+ * As a {@link DistributedLock} holding the lock means holding a permit.
+ */
+public class RedisSemaphore implements DistributedLock {
+
+    private final RedisTemplate<String, String> redis;
+    private final LockListener listener;
+    private final LockReleaseSubscriber releaseSubscriber;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long leaseMillis;
+    private final int permits;
+    private final String semaphoreName;
+    private final String appName;
+    private final List<String> keys;
+
+    public RedisSemaphore(RedisTemplate<String, String> redis,
+                          LockListener listener,
+                          LockReleaseSubscriber releaseSubscriber,
+                          LongSupplier currentTimeSupplier,
+                          LongSupplier nanoTimeSupplier,
+                          long leaseMillis,
+                          int permits,
+                          String semaphoreName,
+                          String appName) {
+        if (permits < 1) {
+            throw new IllegalArgumentException(String.format("Permits must be positive, got: %d", permits));
+        }
+        this.redis = redis;
+        this.listener = listener;
+        this.releaseSubscriber = releaseSubscriber;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.leaseMillis = leaseMillis;
+        this.permits = permits;
+        this.semaphoreName = semaphoreName;
+        this.appName = appName;
+        this.keys = Collections.singletonList(semaphoreName);
+    }
+
+    @Override
+    public String getLockName() {
+        return semaphoreName;
+    }
+
+    @Override
+    public boolean withLock(Runnable runnable, Duration maxWait) {
+        return withPermit(runnable, maxWait);
+    }
+
+    public boolean withPermit(Runnable runnable) {
+        return withPermit(runnable, Duration.ZERO);
+    }
+
+    /**
+     * Run the runnable holding a permit, waiting up to maxWait for a permit to become free.
+     *
+     * @param runnable the action that should be performed
+     * @param maxWait  how long to wait for a permit, zero means fail fast
+     * @return true if the action could be performed with a permit. False if no permit could be acquired in time.
+     */
+    public boolean withPermit(Runnable runnable, Duration maxWait) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, semaphoreName, currentTimeSupplier.getAsLong());
+        listener.onAttempt(semaphoreName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+        long attemptNanos = nanoTimeSupplier.getAsLong();
+        boolean acquired = maxWait.isZero() || maxWait.isNegative()
+                ? tryAcquire(lockAttemptId, attemptNanos)
+                : releaseSubscriber.awaitAcquire(
+                semaphoreName,
+                () -> tryAcquire(lockAttemptId, attemptNanos),
+                attemptNanos + maxWait.toNanos(),
+                nanoTimeSupplier,
+                leaseMillis
+        );
+        if (!acquired) {
+            listener.onBusy(semaphoreName, lockAttemptId.getValue(), lockAttemptId.timestamp);
+            return false;
+        }
+        long acquiredNanos = nanoTimeSupplier.getAsLong();
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            long releaseNanos = nanoTimeSupplier.getAsLong();
+            Long released;
+            try {
+                released = redis.execute(
+                        LockScripts.SEMAPHORE_RELEASE,
+                        keys,
+                        lockAttemptId.getValue(),
+                        LockReleaseSubscriber.releaseChannel(semaphoreName)
+                );
+            } finally {
+                listener.onReleased(semaphoreName, lockAttemptId.getValue(), releaseNanos - acquiredNanos,
+                        nanoTimeSupplier.getAsLong() - releaseNanos);
+            }
+            //noinspection ConstantConditions
+            if (released == 0) {
+                //the concurrency limit was possibly exceeded
+                long leaseExceedDuration = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - acquiredNanos) - leaseMillis;
+                listener.onExpired(semaphoreName, lockAttemptId.getValue(), currentTimeSupplier.getAsLong(), leaseExceedDuration);
+            }
+        }
+    }
+
+    private boolean tryAcquire(LockAttemptId lockAttemptId, long attemptNanos) {
+        Long permitsInUse = redis.execute(
+                LockScripts.SEMAPHORE_ACQUIRE,
+                keys,
+                lockAttemptId.getValue(),
+                String.valueOf(leaseMillis),
+                String.valueOf(permits)
+        );
+        //noinspection ConstantConditions
+        if (permitsInUse == 0) {
+            return false;
+        }
+        listener.onPermitAcquired(semaphoreName, lockAttemptId.getValue(), lockAttemptId.timestamp,
+                nanoTimeSupplier.getAsLong() - attemptNanos, permitsInUse, permits);
+        return true;
+    }
+}
@@ -0,0 +1,183 @@
+package de.comsystoreply.redislocks.locks;
+
+import de.comsystoreply.redislocks.LockEventType;
+import de.comsystoreply.redislocks.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Partitions work by claiming independent shard locks in bulk: a node tries many shard names at once and keeps the ones it won.
+ * Shards are tried by one script per batch of names, and released again by one owner-checked script per batch,
+ * so claiming a thousand shards costs a few round trips instead of one per shard.
+ * <p>
+ * In a Redis Cluster a script only takes keys of one slot, shard names are then grouped by slot.
+ * Hash tagged names like {@code {jobs}:shard-1} keep that to a few round trips, see {@link LockKeys#hashTagged(String, String)}.
+ */
+public class RedisShardClaims {
+    private static final Logger LOG = LoggerFactory.getLogger(RedisShardClaims.class);
+
+    private final RedisTemplate<String, String> redis;
+    private final MetricsReporter metricsReporter;
+    private final LongSupplier currentTimeSupplier;
+    private final LongSupplier nanoTimeSupplier;
+    private final long claimExpiryMillis;
+    private final int batchSize;
+    private final String claimsName;
+    private final String appName;
+    private final boolean cluster;
+
+    public RedisShardClaims(RedisTemplate<String, String> redis,
+                            MetricsReporter metricsReporter,
+                            LongSupplier currentTimeSupplier,
+                            LongSupplier nanoTimeSupplier,
+                            long claimExpiryMillis,
+                            int batchSize,
+                            String claimsName,
+                            String appName) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("Batch size must be positive, got: %d", batchSize));
+        }
+        this.redis = redis;
+        this.metricsReporter = metricsReporter;
+        this.currentTimeSupplier = currentTimeSupplier;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.claimExpiryMillis = claimExpiryMillis;
+        this.batchSize = batchSize;
+        this.claimsName = claimsName;
+        this.appName = appName;
+        this.cluster = LockKeys.isCluster(redis);
+    }
+
+    /**
+     * Claims up to maxClaims of the named shards, busy shards are skipped. The names are tried in random order,
+     * so nodes claiming concurrently spread over the shards instead of all racing for the first ones.
+     * The claims expire after the claim expiry unless they are closed before.
+     *
+     * @param names     the names of all shards
+     * @param maxClaims how many shards to claim at most
+     * @return the claimed shards, possibly none
+     */
+    public Claim tryClaim(Collection<String> names, int maxClaims) {
+        LockAttemptId lockAttemptId = new LockAttemptId(appName, claimsName, currentTimeSupplier.getAsLong());
+        notifyLockEvent(LockEventType.LOCK_ATTEMPT, lockAttemptId, lockAttemptId.timestamp, 0);
+        List<String> shuffled = new ArrayList<>(new LinkedHashSet<>(names));
+        Collections.shuffle(shuffled);
+        Set<String> claimed = new LinkedHashSet<>();
+        try {
+            for (List<String> batch : batches(shuffled)) {
+                if (claimed.size() >= maxClaims) {
+                    break;
+                }
+                List<String> won = redis.execute(
+                        LockScripts.CLAIM,
+                        batch,
+                        lockAttemptId.getValue(),
+                        String.valueOf(claimExpiryMillis),
+                        String.valueOf(maxClaims - claimed.size())
+                );
+                //noinspection ConstantConditions
+                claimed.addAll(won);
+            }
+        } catch (RuntimeException e) {
+            //the caller gets no claim to close, so the shards won by the batches before would stay blocked until they expire
+            if (!claimed.isEmpty()) {
+                try {
+                    release(claimed, lockAttemptId.getValue());
+                } catch (RuntimeException releaseError) {
+                    e.addSuppressed(releaseError);
+                }
+            }
+            throw e;
+        }
+        LOG.info("CLAIMS '{}', an attempt with value '{}' claimed {} of {} shards", claimsName, lockAttemptId.getValue(), claimed.size(), shuffled.size());
+        notifyLockEvent(LockEventType.SHARDS_CLAIMED, lockAttemptId, lockAttemptId.timestamp, claimed.size());
+        return new Claim(lockAttemptId, claimed, nanoTimeSupplier.getAsLong());
+    }
+
+    private void release(Claim claim) {
+        long expired = release(claim.claimed, claim.lockAttemptId.getValue());
+        if (expired != 0) {
+            LOG.warn("CLAIMS '{}', execution for value '{}' was finished after {} of the claims expired - possible race condition detected",
+                    claimsName, claim.lockAttemptId.getValue(), expired);
+            long lockExceedDuration = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - claim.claimedNanos) - claimExpiryMillis;
+            notifyLockEvent(LockEventType.LOCK_EXPIRED, claim.lockAttemptId, currentTimeSupplier.getAsLong(), lockExceedDuration);
+        }
+    }
+
+    /**
+     * @return how many of the shards were not held any more
+     */
+    private long release(Set<String> claimed, String lockValue) {
+        long expired = 0;
+        for (List<String> batch : batches(new ArrayList<>(claimed))) {
+            List<String> batchExpired = redis.execute(
+                    LockScripts.MULTI_DELETE,
+                    batch,
+                    lockValue,
+                    LockReleaseSubscriber.RELEASE_CHANNEL_SUFFIX
+            );
+            //noinspection ConstantConditions
+            expired += batchExpired.size();
+        }
+        return expired;
+    }
+
+    private List<List<String>> batches(List<String> keys) {
+        Map<Integer, List<List<String>>> batchesBySlot = new LinkedHashMap<>();
+        for (String key : keys) {
+            List<List<String>> slotBatches = batchesBySlot.computeIfAbsent(cluster ? LockKeys.slot(key) : 0, slot -> new ArrayList<>());
+            if (slotBatches.isEmpty() || slotBatches.get(slotBatches.size() - 1).size() >= batchSize) {
+                slotBatches.add(new ArrayList<>());
+            }
+            slotBatches.get(slotBatches.size() - 1).add(key);
+        }
+        List<List<String>> batches = new ArrayList<>();
+        batchesBySlot.values().forEach(batches::addAll);
+        return batches;
+    }
+
+    private void notifyLockEvent(LockEventType type, LockAttemptId lockAttemptId, long timestamp, long value) {
+        metricsReporter.recordLockEvent(type, timestamp, claimsName, appName, lockAttemptId.getValue(), value);
+    }
+
+    /**
+     * Shards claimed by one {@link #tryClaim(Collection, int)}, closing releases them all.
+     */
+    public final class Claim implements AutoCloseable {
+        private final LockAttemptId lockAttemptId;
+        private final Set<String> claimed;
+        private final long claimedNanos;
+        private boolean released;
+
+        private Claim(LockAttemptId lockAttemptId, Set<String> claimed, long claimedNanos) {
+            this.lockAttemptId = lockAttemptId;
+            this.claimed = Collections.unmodifiableSet(claimed);
+            this.claimedNanos = claimedNanos;
+        }
+
+        public Set<String> getClaimed() {
+            return claimed;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released || claimed.isEmpty()) {
+                return;
+            }
+            released = true;
+            release(this);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.comsystoreply.redislocks.locks;
+
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tags everything logged while a lock is held with the lock name and the lock value, so the logs of a critical section
+ * can be correlated across nodes, e.g. with {@code %X{lockValue}} in the log pattern.
+ * A lock acquired within another one tags its own section only, its release restores the tags of the outer lock.
+ */
+public class TracingLockListener implements LockListener {
+    static final String LOCK_NAME_KEY = "lockName";
+    static final String LOCK_VALUE_KEY = "lockValue";
+
+    //the tags replaced by the locks held on this thread, lock name and lock value of each, may contain nulls
+    private static final ThreadLocal<List<String>> OUTER_TAGS = ThreadLocal.withInitial(ArrayList::new);
+
+    @Override
+    public void onAcquired(String lockName, String lockValue, long timestamp, long acquireNanos) {
+        List<String> outerTags = OUTER_TAGS.get();
+        outerTags.add(MDC.get(LOCK_NAME_KEY));
+        outerTags.add(MDC.get(LOCK_VALUE_KEY));
+        MDC.put(LOCK_NAME_KEY, lockName);
+        MDC.put(LOCK_VALUE_KEY, lockValue);
+    }
+
+    @Override
+    public void onReleased(String lockName, String lockValue, long holdNanos, long releaseNanos) {
+        List<String> outerTags = OUTER_TAGS.get();
+        int size = outerTags.size();
+        if (size < 2) {
+            MDC.remove(LOCK_NAME_KEY);
+            MDC.remove(LOCK_VALUE_KEY);
+            return;
+        }
+        restore(LOCK_VALUE_KEY, outerTags.remove(size - 1));
+        restore(LOCK_NAME_KEY, outerTags.remove(size - 2));
+    }
+
+    private static void restore(String key, String value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+}